@@ -0,0 +1,52 @@
+package Bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDao;
+import Model.Account;
+
+/**
+ * AccountDao.authenticate for valid credentials and for a wrong password.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountDaoBenchmark {
+    private AccountDao accountDao;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchDatabase.populate(BenchDatabase.ACCOUNTS, 1000);
+        accountDao = new AccountDao();
+        random = new Random(BenchDatabase.SEED);
+    }
+
+    @Benchmark
+    public Account authenticate() {
+        int id = 1 + random.nextInt(BenchDatabase.ACCOUNTS);
+        return accountDao.authenticate(BenchDatabase.username(id), BenchDatabase.password(id));
+    }
+
+    @Benchmark
+    public Account authenticateWrongPassword() {
+        int id = 1 + random.nextInt(BenchDatabase.ACCOUNTS);
+        return accountDao.authenticate(BenchDatabase.username(id), "wrong password");
+    }
+}
@@ -0,0 +1,137 @@
+package Bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Sets up the database the benchmarks run against: a fresh H2 file database in a temporary directory, filled by a
+ * generator with a fixed seed so every run measures the same data.
+ */
+public class BenchDatabase {
+    /**
+     * The seed for every random choice the benchmarks make.
+     */
+    public static final long SEED = 42;
+    /**
+     * The number of accounts generated, including the testuser1 account from the schema script.
+     */
+    public static final int ACCOUNTS = 1000;
+
+    private static final String[] WORDS = { "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog",
+        "hello", "world", "java", "javalin", "message", "social", "media", "post", "today", "coffee", "morning",
+        "weekend", "release", "benchmark", "latency", "throughput" };
+
+    private static boolean initialized;
+
+    private BenchDatabase() {
+    }
+
+    /**
+     * Points ConnectionUtil at a new temporary database. This has to run before anything else touches
+     * ConnectionUtil, because the JDBC URL is read when that class is initialized.
+     */
+    public static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        try {
+            String dir = Files.createTempDirectory("socialmedia-bench").toAbsolutePath().toString();
+            System.setProperty("db.url", "jdbc:h2:" + dir + "/db;");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        initialized = true;
+    }
+
+    /**
+     * Recreates the schema and fills it with generated accounts and messages.
+     * @param accounts the number of accounts, at least 1
+     * @param messages the number of messages, at least 1
+     */
+    public static void populate(int accounts, int messages) {
+        init();
+        ConnectionUtil.resetTestDatabase();
+        Random random = new Random(SEED);
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            conn.setAutoCommit(false);
+            PreparedStatement accountInsert = conn.prepareStatement(
+                "INSERT INTO account(username, password) VALUES(?, ?);");
+            for (int i = 2; i <= accounts; i++) {
+                accountInsert.setString(1, username(i));
+                accountInsert.setString(2, password(i));
+                accountInsert.addBatch();
+            }
+            accountInsert.executeBatch();
+            PreparedStatement messageInsert = conn.prepareStatement(
+                "INSERT INTO message(posted_by, message_text, time_posted_epoch) VALUES(?, ?, ?);");
+            for (int i = 2; i <= messages; i++) {
+                messageInsert.setInt(1, 1 + random.nextInt(accounts));
+                messageInsert.setString(2, text(random));
+                messageInsert.setLong(3, 1669947792L + i);
+                messageInsert.addBatch();
+                if (i % 1000 == 0) {
+                    messageInsert.executeBatch();
+                }
+            }
+            messageInsert.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not populate the benchmark database", e);
+        }
+    }
+
+    /**
+     * Generates messages without touching the database, for the serialization benchmarks.
+     * @param count the number of messages
+     * @return messages with ids 1 to count
+     */
+    public static List<Message> messages(int count) {
+        Random random = new Random(SEED);
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            messages.add(new Message(i, 1 + random.nextInt(ACCOUNTS), text(random), 1669947792L + i));
+        }
+        return messages;
+    }
+
+    /**
+     * @param accountId a generated account id
+     * @return the username generated for it
+     */
+    public static String username(int accountId) {
+        return accountId == 1 ? "testuser1" : "user" + accountId;
+    }
+
+    /**
+     * @param accountId a generated account id
+     * @return the password generated for it
+     */
+    public static String password(int accountId) {
+        return accountId == 1 ? "password" : "password" + accountId;
+    }
+
+    /**
+     * @return between 3 and 30 words, the way short social media posts look
+     */
+    private static String text(Random random) {
+        StringBuilder text = new StringBuilder();
+        int words = 3 + random.nextInt(28);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.length() > 255 ? text.substring(0, 255) : text.toString();
+    }
+}
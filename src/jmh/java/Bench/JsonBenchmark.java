@@ -0,0 +1,49 @@
+package Bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+
+/**
+ * Jackson serialization of message lists the size of a full GET /messages response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int tableSize;
+
+    private final ObjectMapper om = new ObjectMapper();
+    private List<Message> messages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        messages = BenchDatabase.messages(tableSize);
+    }
+
+    @Benchmark
+    public byte[] serializeMessages() throws JsonProcessingException {
+        return om.writeValueAsBytes(messages);
+    }
+}
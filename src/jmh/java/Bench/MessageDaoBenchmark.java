@@ -0,0 +1,67 @@
+package Bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDao;
+import Model.Message;
+
+/**
+ * MessageDao reads and writes against tables of increasing size. save() grows the table while it is measured, so
+ * its table size is the size at the start of the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDaoBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int tableSize;
+
+    private MessageDao messageDao;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchDatabase.populate(BenchDatabase.ACCOUNTS, tableSize);
+        messageDao = new MessageDao();
+        random = new Random(BenchDatabase.SEED);
+    }
+
+    @Benchmark
+    public Message save() {
+        return messageDao.save(new Message(1 + random.nextInt(BenchDatabase.ACCOUNTS), "benchmark message",
+            1669947792));
+    }
+
+    @Benchmark
+    public List<Message> getAll() {
+        return messageDao.getAll();
+    }
+
+    @Benchmark
+    public Message getMessageById() {
+        return messageDao.getMessageById(1 + random.nextInt(tableSize));
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByUser() {
+        return messageDao.getMessagesByUser(1 + random.nextInt(BenchDatabase.ACCOUNTS));
+    }
+}
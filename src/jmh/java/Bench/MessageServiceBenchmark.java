@@ -0,0 +1,52 @@
+package Bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDao;
+import DAO.FollowDao;
+import DAO.MessageDao;
+import Model.Message;
+import Service.FeedService;
+import Service.MessageService;
+
+/**
+ * MessageService.createMessage end to end: validation, the poster check and the insert.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageServiceBenchmark {
+    private MessageService messageService;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchDatabase.populate(BenchDatabase.ACCOUNTS, 1000);
+        MessageDao messageDao = new MessageDao();
+        messageService = new MessageService(messageDao, new AccountDao(),
+            new FeedService(new FollowDao(), messageDao));
+        random = new Random(BenchDatabase.SEED);
+    }
+
+    @Benchmark
+    public Message createMessage() {
+        return messageService.createMessage(new Message(1 + random.nextInt(BenchDatabase.ACCOUNTS),
+            "benchmark message", 1669947792));
+    }
+}
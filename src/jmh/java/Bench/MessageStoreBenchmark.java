@@ -0,0 +1,80 @@
+package Bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageStore;
+import DAO.StorageEngine;
+import Model.Message;
+
+/**
+ * Sustained message inserts and reads by id in each storage engine, from four threads. The log engine writes to a
+ * fresh temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class MessageStoreBenchmark {
+    @Param({ "jdbc", "memory", "log" })
+    public String engine;
+
+    private MessageStore messageStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchDatabase.populate(BenchDatabase.ACCOUNTS, 10000);
+        if (engine.equals("log")) {
+            try {
+                System.setProperty("storage.log.dir",
+                    Files.createTempDirectory("socialmedia-bench-log").toAbsolutePath().toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        System.setProperty("storage.engine", engine);
+        messageStore = StorageEngine.configured().messageStore();
+        for (int i = 1; i <= 10000 && !engine.equals("jdbc"); i++) {
+            save();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        messageStore.close();
+        System.clearProperty("storage.engine");
+        System.clearProperty("storage.log.dir");
+    }
+
+    @Benchmark
+    public Message save() {
+        return messageStore.save(new Message(1 + ThreadLocalRandom.current().nextInt(BenchDatabase.ACCOUNTS),
+            "benchmark message", 1669947792));
+    }
+
+    @Benchmark
+    public Message getMessageById() {
+        return messageStore.getMessageById(1 + ThreadLocalRandom.current().nextInt(10000));
+    }
+}
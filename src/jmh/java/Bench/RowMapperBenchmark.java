@@ -0,0 +1,73 @@
+package Bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDao;
+import DAO.RowMapper;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * A full scan of the message table mapped three ways: SELECT * read by column name, as the DAOs used to; the
+ * explicit column list read by column name; and the explicit column list read through MessageDao.MESSAGE, which
+ * reads each column at its fixed position.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMapperBenchmark {
+    private static final RowMapper<Message> BY_NAME = rs -> new Message(rs.getInt("message_id"),
+        rs.getInt("posted_by"), rs.getString("message_text"), rs.getLong("time_posted_epoch"));
+    private static final String SELECT_STAR = "SELECT * FROM message;";
+    private static final String SELECT_COLUMNS = "SELECT " + MessageDao.MESSAGE.columns() + " FROM message;";
+
+    @Param({ "10000", "100000" })
+    public int tableSize;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchDatabase.populate(BenchDatabase.ACCOUNTS, tableSize);
+    }
+
+    @Benchmark
+    public List<Message> selectStarByName() throws SQLException {
+        return scan(SELECT_STAR, BY_NAME);
+    }
+
+    @Benchmark
+    public List<Message> selectColumnsByName() throws SQLException {
+        return scan(SELECT_COLUMNS, BY_NAME);
+    }
+
+    @Benchmark
+    public List<Message> selectColumnsByIndex() throws SQLException {
+        return scan(SELECT_COLUMNS, MessageDao.MESSAGE);
+    }
+
+    private static List<Message> scan(String sql, RowMapper<Message> mapper) throws SQLException {
+        try (Connection conn = ConnectionUtil.borrowConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            return RowMapper.list(pstmt, mapper);
+        }
+    }
+}
@@ -1,43 +1,441 @@
 package Controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
+import DAO.AccountStore;
+import DAO.FollowStore;
+import DAO.MessageStore;
+import DAO.StorageEngine;
 import Model.Account;
 import Model.Message;
 import Service.AccountService;
+import Service.FeedService;
+import Service.FollowService;
 import Service.MessageService;
+import Util.CursorUtil;
+import Util.ETagUtil;
+import Util.Metrics;
+import Util.PrecompressedCache;
+import Util.RateLimitExceededException;
+import Util.RateLimiter;
+import Util.SessionTokens;
 import io.javalin.Javalin;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
+import io.javalin.config.JavalinConfig;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.ForbiddenResponse;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.http.UnauthorizedResponse;
+import io.javalin.util.ConcurrencyUtil;
+import io.javalin.util.LoomUtil;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
 
 /**
  * found in readme.md as well as the test cases. You should
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
-    private final AccountService accountAervice = new AccountService();
-    private final MessageService messageService = new MessageService();
+    private static final Logger LOG = LoggerFactory.getLogger(SocialMediaController.class);
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("messages.batch.maxSize", 10000);
+    private static final TypeReference<List<Message>> MESSAGE_LIST = new TypeReference<List<Message>>() { };
+    private static final String REQUEST_START = "requestStartNanos";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /**
+     * The response header a successful login carries its session token in; the body stays the account.
+     */
+    static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+    private static final String AUTHENTICATED_ACCOUNT = "authenticatedAccount";
+    /**
+     * When set, requests that change data must carry a session token; otherwise a token is checked if present.
+     */
+    private static final boolean SESSION_REQUIRED = Boolean.getBoolean("session.required");
+    /**
+     * The gzip level responses are compressed with, 0 to turn compression off.
+     */
+    private static final int COMPRESSION_LEVEL = Integer.getInteger("http.compression.level", 6);
+    /**
+     * Responses smaller than this many bytes are sent uncompressed, since gzip gains little on them.
+     */
+    private static final int COMPRESSION_MIN_SIZE = Integer.getInteger("http.compression.minSize", 1500);
+
+    /**
+     * Where messages, accounts and follows are kept, chosen with storage.engine.
+     */
+    private final StorageEngine storageEngine = StorageEngine.configured();
+    /**
+     * Shared by both services so the account id index it keeps sees every registration.
+     */
+    private final AccountStore accountStore = storageEngine.accountStore();
+    private final MessageStore messageStore = storageEngine.messageStore();
+    private final FollowStore followStore = storageEngine.followStore();
+    /**
+     * Shared by the message and follow services, which keep it up to date as messages are posted and follows change.
+     */
+    private final FeedService feedService = new FeedService(followStore, messageStore);
+    private final AccountService accountAervice = new AccountService(accountStore);
+    private final MessageService messageService = new MessageService(messageStore, accountStore, feedService);
+    private final FollowService followService = new FollowService(followStore, accountStore, feedService);
     private ObjectMapper om = new ObjectMapper();
+    private final ObjectWriter streamWriter = om.writerFor(Message.class)
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    private final LongAdder inFlight = new LongAdder();
+    /**
+     * Compressed full message lists, keyed by route and stamped with the message table version they were read at.
+     */
+    private final PrecompressedCache precompressed = new PrecompressedCache(
+        Integer.getInteger("http.precompressed.maxEntries", 64), Math.max(COMPRESSION_LEVEL, 1));
+    private final SessionTokens sessionTokens = SessionTokens.configured();
+    /**
+     * Failed logins by username. Only failures take a token, so nobody can lock an account out by logging in as
+     * it with the right password, or at all without guessing wrong; null if the rule is turned off.
+     */
+    private RateLimiter loginFailures;
     /**
      * In order for the test cases to work, you will need to write the endpoints in the startAPI() method, as the test
      * suite must receive a Javalin object from this method.
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        configureRequestThreads();
+        Javalin app = Javalin.create(this::configureCompression);
+        Metrics.register("http_requests_in_flight", "Requests currently being handled", "gauge", "", inFlight::sum);
+        Metrics.register("http_precompressed_hits_total", "List responses sent from stored compressed bytes",
+            "counter", "", precompressed::getHits);
+        Metrics.register("http_precompressed_misses_total", "List responses that had to be compressed", "counter", "",
+            precompressed::getMisses);
+        app.events(event -> event.serverStopped(() -> {
+            // queued group commits are flushed before the store they are written to goes away
+            messageService.close();
+            messageStore.close();
+        }));
+        app.before(this::beforeRequest);
+        app.before(this::authenticate);
+        app.after(this::afterRequest);
+        app.exception(RejectedExecutionException.class, (e, context) -> context.status(503));
+        app.exception(RateLimitExceededException.class, (e, context) -> context
+            .header(Header.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds())).status(429).json(e.getMessage()));
+        rateLimit(app, HandlerType.POST, "login", RateLimiter.configured("login.ip", 10, 20), null, null);
+        loginFailures = RateLimiter.configured("login.account", 0.1, 5);
+        if (loginFailures != null) {
+            app.before("login", this::checkLoginLockout);
+        }
+        rateLimit(app, HandlerType.POST, "register", RateLimiter.configured("register.ip", 2, 10), null, null);
+        rateLimit(app, HandlerType.POST, "messages", RateLimiter.configured("post_messages.ip", 100, 200),
+            RateLimiter.configured("post_messages.account", 20, 40), this::sessionAccountKey);
+        rateLimit(app, HandlerType.POST, "messages/batch", RateLimiter.configured("post_messages_batch.ip", 2, 10),
+            null, null);
+        app.get("metrics", this::getMetrics);
         app.post("register", this::register);
         app.post("login", this::login);
+        app.post("logout", this::logout);
         app.post("messages", this::saveMessage);
+        app.post("messages/batch", this::saveMessages);
         app.get("messages", this::getAllMessages);
+        app.get("messages/search", this::searchMessages);
         app.get("messages/{message_id}", this::getMessage);
         app.delete("messages/{message_id}", this::deleteMessage);
         app.patch("messages/{message_id}", this::updateMessageText);
         app.get("accounts/{account_id}/messages", this::getUserMessages);
+        app.post("accounts/{account_id}/following/{followee_id}", this::follow);
+        app.delete("accounts/{account_id}/following/{followee_id}", this::unfollow);
+        app.get("accounts/{account_id}/following", this::getFollowing);
+        app.get("accounts/{account_id}/followers", this::getFollowers);
+        app.get("accounts/{account_id}/feed", this::getFeed);
         return app;
     }
 
+    /**
+     * Chooses the threads Jetty runs handlers on. By default that is a bounded pool of platform threads; with
+     * -Dserver.virtualThreads=true on a JDK with virtual threads, every request gets its own virtual thread, so
+     * requests blocked on JDBC no longer hold a platform thread each. The DAO layer only blocks through
+     * java.util.concurrent locks, which do not pin a virtual thread to its carrier.
+     */
+    private void configureRequestThreads() {
+        boolean virtualThreads = Boolean.getBoolean("server.virtualThreads");
+        if (virtualThreads && !LoomUtil.INSTANCE.getLoomAvailable()) {
+            LOG.warn("server.virtualThreads is set but this JDK has no virtual threads, using platform threads");
+            virtualThreads = false;
+        }
+        ConcurrencyUtil.INSTANCE.setUseLoom(virtualThreads);
+    }
+
+    /**
+     * Compresses responses with gzip for clients that send Accept-Encoding: gzip, once they reach
+     * http.compression.minSize bytes and unless their content type is already compressed (images, video, archives
+     * and the like, Javalin's default exclusions). Brotli is left out: Javalin only supports it through a native
+     * encoder, and there is no pure-Java one to fall back on.
+     * @param config the configuration of the app being created
+     */
+    private void configureCompression(JavalinConfig config) {
+        if (COMPRESSION_LEVEL <= 0) {
+            config.compression.none();
+            return;
+        }
+        CompressionStrategy strategy = new CompressionStrategy(null, new Gzip(COMPRESSION_LEVEL));
+        strategy.setMinSizeForCompression(COMPRESSION_MIN_SIZE);
+        config.compression.custom(strategy);
+        config.jetty.contextHandlerConfig(handler -> handler.addFilter(new FilterHolder(this::filterRefusedGzip),
+            "/*", EnumSet.of(DispatcherType.REQUEST)));
+    }
+
+    /**
+     * Javalin compresses whenever Accept-Encoding mentions gzip, even as gzip;q=0. A request that names gzip but
+     * does not accept it is passed on with Accept-Encoding: identity, so every response honours the q-value.
+     */
+    private void filterRefusedGzip(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        String acceptEncoding = ((HttpServletRequest) request).getHeader(Header.ACCEPT_ENCODING);
+        if (acceptEncoding == null || acceptsGzip(acceptEncoding)
+                || !acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        chain.doFilter(new HttpServletRequestWrapper((HttpServletRequest) request) {
+            @Override
+            public String getHeader(String name) {
+                return Header.ACCEPT_ENCODING.equalsIgnoreCase(name) ? "identity" : super.getHeader(name);
+            }
+
+            @Override
+            public Enumeration<String> getHeaders(String name) {
+                return Header.ACCEPT_ENCODING.equalsIgnoreCase(name)
+                    ? Collections.enumeration(List.of("identity")) : super.getHeaders(name);
+            }
+        }, response);
+    }
+
+    /**
+     * Before every request, stamps its start time and counts it as in flight.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void beforeRequest(Context context) {
+        context.attribute(REQUEST_START, System.nanoTime());
+        inFlight.increment();
+    }
+
+    /**
+     * Registers a before-handler that holds one route to per-IP and per-account rate limits, answering 429 with
+     * Retry-After once either is used up. The account must come from something the client has proven, such as a
+     * verified session token, never from the request body, or anyone could drain another account's bucket. Each
+     * limiter is configured by ratelimit.&lt;name&gt;.rate and .burst, and a null limiter is not checked.
+     * @param app the app to register on
+     * @param method the method of the route
+     * @param path the path of the route
+     * @param byIp the limiter keyed by client IP, or null
+     * @param byAccount the limiter keyed by account, or null
+     * @param account finds the account a request acts for, returning null if it cannot
+     */
+    private void rateLimit(Javalin app, HandlerType method, String path, RateLimiter byIp, RateLimiter byAccount,
+            Function<Context, String> account) {
+        if (byIp == null && byAccount == null) {
+            return;
+        }
+        app.before(path, context -> {
+            if (context.method() != method) {
+                return;
+            }
+            if (byIp != null) {
+                checkRateLimit(byIp, context.ip());
+            }
+            if (byAccount != null) {
+                String key = account.apply(context);
+                if (key != null) {
+                    checkRateLimit(byAccount, key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Before a login, answers 429 if the username has used up its allowance of failed logins. Nothing is taken
+     * here; {@link #login(Context)} charges the username when the password is wrong.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void checkLoginLockout(Context context) {
+        if (context.method() != HandlerType.POST) {
+            return;
+        }
+        String username = bodyField(context, "username");
+        if (username != null) {
+            long wait = loginFailures.peek(username);
+            if (wait > 0) {
+                throw new RateLimitExceededException(loginFailures.getName(), wait);
+            }
+        }
+    }
+
+    /**
+     * @param context the request context, after authenticate
+     * @return the account id of the request's verified session token, or null if it carries none
+     */
+    private String sessionAccountKey(Context context) {
+        Integer account_id = context.attribute(AUTHENTICATED_ACCOUNT);
+        return account_id == null ? null : account_id.toString();
+    }
+
+    /**
+     * @param limiter the limiter to take a token from
+     * @param key the client to take it for
+     * @throws RateLimitExceededException if the client's bucket is empty
+     */
+    private void checkRateLimit(RateLimiter limiter, String key) {
+        long wait = limiter.tryAcquire(key);
+        if (wait > 0) {
+            throw new RateLimitExceededException(limiter.getName(), wait);
+        }
+    }
+
+    /**
+     * @param context the request context
+     * @param field a top-level field of the JSON request body
+     * @return the field's value as text, or null if the body is not a JSON object with that field
+     */
+    private String bodyField(Context context, String field) {
+        try {
+            JsonNode value = om.readTree(context.body()).get(field);
+            return value == null || value.isNull() ? null : value.asText();
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Before every request, checks the session token in an Authorization: Bearer header, if there is one, and
+     * remembers the account it acts for. The token is checked without touching the database; a bad one is
+     * answered with 401.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void authenticate(Context context) {
+        String token = bearerToken(context);
+        if (token == null) {
+            return;
+        }
+        int account_id = sessionTokens.verify(token);
+        if (account_id < 1) {
+            throw new UnauthorizedResponse("Invalid or expired session token");
+        }
+        context.attribute(AUTHENTICATED_ACCOUNT, account_id);
+    }
+
+    /**
+     * @param context the request context
+     * @return the token in the request's Authorization: Bearer header, or null if there is none
+     */
+    private String bearerToken(Context context) {
+        String authorization = context.header(Header.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        return authorization.substring(7).trim();
+    }
+
+    /**
+     * @param context the request context, after authenticate
+     * @return the account the request's session token acts for, or 0 if it carries none
+     * @throws UnauthorizedResponse if session.required is set and the request carries no token
+     */
+    private int actingAccount(Context context) {
+        Integer account_id = context.attribute(AUTHENTICATED_ACCOUNT);
+        if (account_id == null) {
+            if (SESSION_REQUIRED) {
+                throw new UnauthorizedResponse("A session token is required");
+            }
+            return 0;
+        }
+        return account_id;
+    }
+
+    /**
+     * To check that a request acting for an account carries no token or a token for that account
+     * @param context the request context, after authenticate
+     * @param account_id the account the request acts for
+     * @return true if the poster was proved to exist by a session token
+     * @throws ForbiddenResponse if the token is for another account
+     */
+    private boolean checkActingAs(Context context, int account_id) {
+        int acting = actingAccount(context);
+        if (acting != 0 && acting != account_id) {
+            throw new ForbiddenResponse("The session token is for another account");
+        }
+        return acting != 0;
+    }
+
+    /**
+     * After every request, records its latency and status code against the route that handled it.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void afterRequest(Context context) {
+        Long start = context.attribute(REQUEST_START);
+        if (start == null) {
+            return;
+        }
+        inFlight.decrement();
+        String labels = "method=\"" + context.method() + "\",route=\"" + routeLabel(context) + "\"";
+        Metrics.histogram("http_request_duration_seconds", "Latency of HTTP requests", labels).recordSince(start);
+        Metrics.counter("http_requests_total", "HTTP requests by status code",
+            labels + ",status=\"" + context.statusCode() + "\"").increment();
+    }
+
+    /**
+     * @param context the request context, after the request has been handled
+     * @return the path of the route that handled the request, or "unmatched" if none did. Using the route rather
+     * than the request path keeps one time series per endpoint however many ids clients ask for.
+     */
+    private String routeLabel(Context context) {
+        String route = context.endpointHandlerPath();
+        if (route.contains(" ")) {
+            // Javalin reports a description rather than a path when no handler matched
+            return "unmatched";
+        }
+        return route.startsWith("/") ? route : "/" + route;
+    }
+
+    /**
+     * get("/metrics")
+     * A handler exposing request, DAO, pool and cache metrics in the Prometheus text format.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getMetrics(Context context) {
+        context.contentType(PROMETHEUS_CONTENT_TYPE).result(Metrics.scrape());
+    }
+
     /**Post("/register")
      * a handler to register a new user account
      * @param context The Javalin Context object manages information about both the HTTP request and response.
@@ -45,13 +443,14 @@ public class SocialMediaController {
     private void register(Context context) {
         try {
             Account account = om.readValue(context.body(), Account.class);
-            account = accountAervice.createAccount(account);
-            if(account.getAccount_id() > 0) {
-                context.json(account);
-            }
-            else {
-                context.status(400);
-            }
+            context.future(() -> accountAervice.createAccountAsync(account).thenAccept(created -> {
+                if(created.getAccount_id() > 0) {
+                    context.json(created);
+                }
+                else {
+                    context.status(400);
+                }
+            }));
         } catch (JsonMappingException e) {
             e.printStackTrace();
         } catch (JsonProcessingException e) {
@@ -67,13 +466,19 @@ public class SocialMediaController {
     private void login(Context context) {
         try {
             Account account = om.readValue(context.body(), Account.class);
-            account = accountAervice.login(account);
-            if(account.getAccount_id() > 0) {
-                context.json(account);
-            }
-            else {
-                context.status(401);
-            }
+            context.future(() -> accountAervice.loginAsync(account).thenAccept(authenticated -> {
+                if(authenticated.getAccount_id() > 0) {
+                    context.header(SESSION_TOKEN_HEADER, sessionTokens.issue(authenticated.getAccount_id()));
+                    context.header(Header.CACHE_CONTROL, "no-store");
+                    context.json(authenticated);
+                }
+                else {
+                    if (loginFailures != null && account.getUsername() != null) {
+                        loginFailures.tryAcquire(account.getUsername());
+                    }
+                    context.status(401);
+                }
+            }));
         } catch (JsonMappingException e) {
             e.printStackTrace();
         } catch (JsonProcessingException e) {
@@ -81,21 +486,34 @@ public class SocialMediaController {
         }
     }
 
+    /**
+     * post("/logout")
+     * A handler to end the session of the token in the Authorization header, so it is refused from now on.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void logout(Context context) {
+        String token = bearerToken(context);
+        context.status(token != null && sessionTokens.revoke(token) ? 200 : 401);
+    }
+
     /**
      * post("/messages")
-     * A handler to save a new message.
+     * A handler to save a new message. A request with a session token may only post as its account, and the
+     * poster is then not looked up.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
     private void saveMessage(Context context) {
         try {
             Message message = om.readValue(context.body(), Message.class);
-            message = messageService.createMessage(message) ;
-            if(message.getMessage_id() > 0) {
-                context.json(message);
-            }
-            else {
-                context.status(400);
-            }
+            boolean verified = checkActingAs(context, message.getPosted_by());
+            context.future(() -> messageService.createMessageAsync(message, verified).thenAccept(created -> {
+                if(created.getMessage_id() > 0) {
+                    context.json(created);
+                }
+                else {
+                    context.status(400);
+                }
+            }));
         } catch (JsonMappingException e) {
             e.printStackTrace();
         } catch (JsonProcessingException e) {
@@ -103,30 +521,147 @@ public class SocialMediaController {
         }
     }
 
+    /**
+     * post("/messages/batch")
+     * A handler to save a JSON array of new messages at once. It responds with one result per message, in the
+     * order given, so a client can tell which messages were created and which were rejected.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void saveMessages(Context context) {
+        List<Message> messages;
+        try {
+            messages = om.readValue(context.body(), MESSAGE_LIST);
+        } catch (JsonProcessingException e) {
+            context.status(400).json("Expected a JSON array of messages");
+            return;
+        }
+        if (messages == null || messages.size() > MAX_BATCH_SIZE) {
+            context.status(400).json("A batch holds at most " + MAX_BATCH_SIZE + " messages");
+            return;
+        }
+        int acting = actingAccount(context);
+        if (acting != 0) {
+            for (Message message : messages) {
+                if (message != null && message.getPosted_by() != acting) {
+                    throw new ForbiddenResponse("The session token is for another account");
+                }
+            }
+        }
+        context.future(() -> messageService.createMessagesAsync(messages, acting != 0).thenAccept(context::json));
+    }
+
     /**
      * Get("/messages")
-     * A handler to retrieve all messages.
+     * A handler to retrieve all messages. With a limit or after query parameter, it returns one page of
+     * messages and a cursor for the next page instead of the whole table. With stream=true, the whole table is
+     * written to the response as it is read. Responses carry an ETag of the message table's version, and a
+     * matching If-None-Match is answered with 304 before any query runs.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
     private void getAllMessages(Context context) {
-        context.json(messageService.getAllMessages());
+        String limitParam = context.queryParam("limit");
+        String after = context.queryParam("after");
+        if (limitParam == null && after == null) {
+            long version = messageService.getMessagesVersion();
+            if (notModified(context, ETagUtil.forVersion(version))) {
+                return;
+            }
+            if (isStreamRequested(context)) {
+                streamMessages(context, messageService::streamAllMessages);
+                return;
+            }
+            sendMessageList(context, "messages", version, messageService::getAllMessagesAsync);
+            return;
+        }
+        int limit = parseLimit(limitParam);
+        if (limit < 1) {
+            context.status(400).json("Invalid limit: " + limitParam);
+            return;
+        }
+        int afterId = 0;
+        if (after != null) {
+            long[] keys = CursorUtil.decode(after, 1);
+            if (keys == null) {
+                context.status(400).json("Invalid cursor: " + after);
+                return;
+            }
+            afterId = (int) keys[0];
+        }
+        if (notModified(context, ETagUtil.forVersion(messageService.getMessagesVersion()))) {
+            return;
+        }
+        int from = afterId;
+        context.future(() -> messageService.getMessagesPageAsync(from, limit).thenAccept(context::json));
+    }
+
+    /**
+     * Get("/messages/search")
+     * A handler to search message text. q holds terms that must all appear, with OR between alternatives; the
+     * matches are returned best first, a page of limit at a time, with a cursor for the next page.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void searchMessages(Context context) {
+        String query = context.queryParam("q");
+        if (query == null || query.isBlank()) {
+            context.status(400).json("Missing search query");
+            return;
+        }
+        String limitParam = context.queryParam("limit");
+        int limit = parseLimit(limitParam);
+        if (limit < 1) {
+            context.status(400).json("Invalid limit: " + limitParam);
+            return;
+        }
+        String after = context.queryParam("after");
+        int offset = 0;
+        if (after != null) {
+            long[] keys = CursorUtil.decode(after, 1);
+            if (keys == null || keys[0] < 0 || keys[0] > Integer.MAX_VALUE) {
+                context.status(400).json("Invalid cursor: " + after);
+                return;
+            }
+            offset = (int) keys[0];
+        }
+        int from = offset;
+        context.future(() -> messageService.searchMessagesAsync(query, from, limit).thenAccept(context::json));
+    }
+
+    /**
+     * To parse a page size query parameter
+     * @param limitParam the raw query parameter, null if absent
+     * @return the page size capped at the maximum, or -1 if the parameter is not a positive number
+     */
+    private int parseLimit(String limitParam) {
+        if (limitParam == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        try {
+            int limit = Integer.parseInt(limitParam);
+            return limit < 1 ? -1 : Math.min(limit, MAX_PAGE_SIZE);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
      * Get("messages/{message_id}")
-     * A handler to retrieve a message with the given message_id
+     * A handler to retrieve a message with the given message_id. The response carries an ETag of the message's
+     * id and content, and a matching If-None-Match is answered with 304.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
     private void getMessage(Context context) {
         try {
             int message_id = Integer.parseInt(context.pathParam("message_id"));
-            Message message = messageService.getMessageById(message_id);
-            if(message.getMessage_id() > 0) {
-                context.json(message);
-            }
-            else {
-                context.result("");
-            }
+            context.future(() -> messageService.getMessageByIdAsync(message_id).thenAccept(message -> {
+                if(message.getMessage_id() > 0) {
+                    if (!notModified(context, ETagUtil.forMessage(message))) {
+                        context.json(message);
+                    }
+                }
+                else {
+                    context.result("");
+                }
+            }));
         } catch (NumberFormatException e) {
             context.status(400).json("Invalid message ID: " + context.pathParam("message_id"));
         }
@@ -134,20 +669,22 @@ public class SocialMediaController {
 
     /**
      * delete("messages/{message_id}")
-     * A handler to delete a message with the given message_id
+     * A handler to delete a message with the given message_id. With a session token, only the token's own
+     * messages can be deleted, and other messages are treated as missing.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
     private void deleteMessage(Context context) {
         try {
             int message_id = Integer.parseInt(context.pathParam("message_id"));
-            Message message = messageService.getMessageById(message_id);
-            if(message.getMessage_id() > 0) {
-                messageService.deleteMessage(message_id);
-                context.json(message);
-            }
-            else {
-                context.result("");
-            }
+            int acting = actingAccount(context);
+            context.future(() -> messageService.deleteMessageAsync(message_id, acting).thenAccept(message -> {
+                if(message.getMessage_id() > 0) {
+                    context.json(message);
+                }
+                else {
+                    context.result("");
+                }
+            }));
         } catch (NumberFormatException e) {
             context.status(400).json("Invalid message ID: " + context.pathParam("message_id"));
         }
@@ -155,7 +692,8 @@ public class SocialMediaController {
 
     /**
      * patch("messages/{message_id}")
-     * A handler for updating the text of the message with the given message_id
+     * A handler for updating the text of the message with the given message_id. With a session token, only the
+     * token's own messages can be updated.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
     private void updateMessageText(Context context) {
@@ -172,13 +710,17 @@ public class SocialMediaController {
             } catch (JsonProcessingException e) {
                 e.printStackTrace();
             }
-            Message message = messageService.updateMessageText(message_id, message_text);
-            if(message.getMessage_id() > 0) {
-                context.json(message);
-            }
-            else {
-                context.status(400);
-            }
+            String text = message_text;
+            int acting = actingAccount(context);
+            context.future(() -> messageService.updateMessageTextAsync(message_id, text, acting)
+                .thenAccept(message -> {
+                    if(message.getMessage_id() > 0) {
+                        context.json(message);
+                    }
+                    else {
+                        context.status(400);
+                    }
+                }));
         } catch (NumberFormatException e) {
             context.status(400).json("Invalid message ID: " + context.pathParam("message_id"));
         }
@@ -186,15 +728,296 @@ public class SocialMediaController {
 
     /**
      * get("accounts/{account_id/messages}")
-     * A handler for retrieving all messages posted by the account wit the given account_id
+     * A handler for retrieving all messages posted by the account wit the given account_id. With a limit or
+     * before query parameter, it returns one page of the account's messages newest first and a cursor for the
+     * next older page. With stream=true, the messages are written to the response as they are read. ETags work
+     * as for get("/messages").
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
     private void getUserMessages(Context context) {
         try {
             int posted_by = Integer.parseInt(context.pathParam("account_id"));
-            context.json(messageService.getUserMessages(posted_by));
+            String limitParam = context.queryParam("limit");
+            String before = context.queryParam("before");
+            if (limitParam != null || before != null) {
+                int limit = parseLimit(limitParam);
+                if (limit < 1) {
+                    context.status(400).json("Invalid limit: " + limitParam);
+                    return;
+                }
+                long[] keys = null;
+                if (before != null) {
+                    keys = CursorUtil.decode(before, 2);
+                    if (keys == null) {
+                        context.status(400).json("Invalid cursor: " + before);
+                        return;
+                    }
+                }
+                if (notModified(context, ETagUtil.forVersion(messageService.getMessagesVersion()))) {
+                    return;
+                }
+                long[] before_keys = keys;
+                context.future(() -> messageService.getUserMessagesPageAsync(posted_by, before_keys, limit)
+                    .thenAccept(context::json));
+                return;
+            }
+            long version = messageService.getMessagesVersion();
+            if (notModified(context, ETagUtil.forVersion(version))) {
+                return;
+            }
+            if (isStreamRequested(context)) {
+                streamMessages(context, consumer -> messageService.streamUserMessages(posted_by, consumer));
+                return;
+            }
+            sendMessageList(context, "accounts/" + posted_by + "/messages", version,
+                () -> messageService.getUserMessagesAsync(posted_by));
         } catch (NumberFormatException e) {
-            context.status(400).json("Invalid message ID: " + context.pathParam("message_id"));
+            context.status(400).json("Invalid account ID: " + context.pathParam("account_id"));
+        }
+    }
+
+    /**
+     * Tags the response with the entity tag and, if the client already holds that representation, answers 304
+     * without a body, so nothing is read or serialized for an unchanged poll. Clients that accept gzip get the tag
+     * of the gzip variant, since the body they receive may be compressed.
+     * @param context the request context
+     * @param etag the entity tag of the current representation
+     * @return true if a 304 was sent and the handler has nothing left to do
+     */
+    private boolean notModified(Context context, String etag) {
+        if (COMPRESSION_LEVEL > 0) {
+            context.header(Header.VARY, Header.ACCEPT_ENCODING);
+            if (acceptsGzip(context.header(Header.ACCEPT_ENCODING))) {
+                etag = ETagUtil.forGzip(etag);
+            }
+        }
+        context.header(Header.ETAG, etag);
+        if (ETagUtil.matches(context.header(Header.IF_NONE_MATCH), etag)) {
+            context.status(304);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends a full list of messages. For clients that accept gzip, a list big enough to compress is compressed
+     * once per version of the message table and kept, so polls between writes are answered with the stored bytes
+     * without querying, serializing or compressing again.
+     * @param context the request context
+     * @param key identifies the list among the cached responses
+     * @param version the message table version read before the query
+     * @param query reads the list on the database executor
+     */
+    private void sendMessageList(Context context, String key, long version,
+            Supplier<CompletableFuture<List<Message>>> query) {
+        if (COMPRESSION_LEVEL <= 0 || !acceptsGzip(context.header(Header.ACCEPT_ENCODING))) {
+            context.future(() -> query.get().thenAccept(context::json));
+            return;
+        }
+        byte[] cached = precompressed.get(key, version);
+        if (cached != null) {
+            sendGzipped(context, cached);
+            return;
+        }
+        context.future(() -> query.get().thenAccept(messages -> {
+            byte[] json;
+            try {
+                json = om.writeValueAsBytes(messages);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (json.length < COMPRESSION_MIN_SIZE) {
+                context.contentType(ContentType.APPLICATION_JSON).result(json);
+            } else {
+                sendGzipped(context, precompressed.put(key, version, json));
+            }
+        }));
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding request header, null if absent
+     * @return true if gzip, or * when gzip is not listed, is accepted with a q-value above 0
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double gzip = -1;
+        double any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim().toLowerCase(Locale.ROOT);
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = Math.max(gzip, q);
+            } else if (coding.equals("*")) {
+                any = Math.max(any, q);
+            }
+        }
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    /**
+     * Writes an already compressed JSON body straight to the servlet response, around Javalin's own compression,
+     * which would otherwise compress it a second time.
+     * @param context the request context
+     * @param gzip the gzip-compressed JSON body
+     */
+    private void sendGzipped(Context context, byte[] gzip) {
+        context.contentType(ContentType.APPLICATION_JSON);
+        context.header(Header.CONTENT_ENCODING, "gzip");
+        context.header(Header.VARY, Header.ACCEPT_ENCODING);
+        context.res().setContentLength(gzip.length);
+        try {
+            context.res().getOutputStream().write(gzip);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * post("accounts/{account_id}/following/{followee_id}")
+     * A handler to make the account follow another. Following an account already followed succeeds.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void follow(Context context) {
+        try {
+            int follower_id = Integer.parseInt(context.pathParam("account_id"));
+            int followee_id = Integer.parseInt(context.pathParam("followee_id"));
+            checkActingAs(context, follower_id);
+            context.future(() -> followService.followAsync(follower_id, followee_id)
+                .thenAccept(following -> context.status(following ? 200 : 400)));
+        } catch (NumberFormatException e) {
+            context.status(400).json("Invalid account ID");
+        }
+    }
+
+    /**
+     * delete("accounts/{account_id}/following/{followee_id}")
+     * A handler to make the account stop following another. Unfollowing an account not followed succeeds.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void unfollow(Context context) {
+        try {
+            int follower_id = Integer.parseInt(context.pathParam("account_id"));
+            int followee_id = Integer.parseInt(context.pathParam("followee_id"));
+            checkActingAs(context, follower_id);
+            context.future(() -> followService.unfollowAsync(follower_id, followee_id)
+                .thenAccept(valid -> context.status(valid ? 200 : 400)));
+        } catch (NumberFormatException e) {
+            context.status(400).json("Invalid account ID");
+        }
+    }
+
+    /**
+     * get("accounts/{account_id}/following")
+     * A handler for retrieving the ids of the accounts the account follows. It is answered from memory.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getFollowing(Context context) {
+        try {
+            context.json(followService.getFollowing(Integer.parseInt(context.pathParam("account_id"))));
+        } catch (NumberFormatException e) {
+            context.status(400).json("Invalid account ID: " + context.pathParam("account_id"));
+        }
+    }
+
+    /**
+     * get("accounts/{account_id}/followers")
+     * A handler for retrieving the ids of the accounts following the account. It is answered from memory.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getFollowers(Context context) {
+        try {
+            context.json(followService.getFollowers(Integer.parseInt(context.pathParam("account_id"))));
+        } catch (NumberFormatException e) {
+            context.status(400).json("Invalid account ID: " + context.pathParam("account_id"));
+        }
+    }
+
+    /**
+     * get("accounts/{account_id}/feed")
+     * A handler for retrieving one page of the account's home feed: the messages of the accounts it follows,
+     * newest first, with a cursor for the next older page in the before query parameter. Pages are read from
+     * memory, so no join is run per request.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getFeed(Context context) {
+        try {
+            int account_id = Integer.parseInt(context.pathParam("account_id"));
+            String limitParam = context.queryParam("limit");
+            int limit = parseLimit(limitParam);
+            if (limit < 1) {
+                context.status(400).json("Invalid limit: " + limitParam);
+                return;
+            }
+            int before = Integer.MAX_VALUE;
+            String cursor = context.queryParam("before");
+            if (cursor != null) {
+                long[] keys = CursorUtil.decode(cursor, 1);
+                if (keys == null || keys[0] < 1 || keys[0] > Integer.MAX_VALUE) {
+                    context.status(400).json("Invalid cursor: " + cursor);
+                    return;
+                }
+                before = (int) keys[0];
+            }
+            int before_id = before;
+            context.future(() -> messageService.getFeedAsync(account_id, before_id, limit)
+                .thenAccept(context::json));
+        } catch (NumberFormatException e) {
+            context.status(400).json("Invalid account ID: " + context.pathParam("account_id"));
+        }
+    }
+
+    /**
+     * @param context the request context
+     * @return true if the client asked for a streamed response with stream=true
+     */
+    private boolean isStreamRequested(Context context) {
+        return "true".equalsIgnoreCase(context.queryParam("stream"));
+    }
+
+    /**
+     * Writes a JSON array of messages straight to the response output stream as the source produces them, so
+     * memory use does not grow with the number of messages and the first bytes go out before the last row is read.
+     * If the source fails, the status line may already have gone out, so the connection is aborted instead of
+     * closing the array: the client sees a broken response rather than a short list it would take as complete.
+     * @param context the request context
+     * @param source feeds each message to the consumer it is given
+     */
+    private void streamMessages(Context context, Consumer<Consumer<Message>> source) {
+        context.contentType(ContentType.APPLICATION_JSON);
+        try (JsonGenerator generator = om.getFactory().createGenerator(context.outputStream())) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.writeStartArray();
+            boolean[] first = { true };
+            source.accept(message -> {
+                try {
+                    streamWriter.writeValue(generator, message);
+                    if (first[0]) {
+                        first[0] = false;
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            LOG.error("Streaming messages failed part way, aborting the response", e);
+            Request.getBaseRequest(context.req()).getHttpChannel().abort(e);
         }
     }
-}
\ No newline at end of file
+}
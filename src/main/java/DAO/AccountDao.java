@@ -5,38 +5,93 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import Model.Account;
+import Util.BloomFilter;
 import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
 
-public class AccountDao {
-    private Connection conn;
+public class AccountDao implements AccountStore {
+    /**
+     * Latency of each DAO method, exported at GET /metrics.
+     */
+    private static final LatencyHistogram SAVE_TIMER = Metrics.daoTimer("AccountDao", "save");
+    private static final LatencyHistogram GET_ACCOUNT_BY_ID_TIMER =
+        Metrics.daoTimer("AccountDao", "getAccountById");
+    private static final LatencyHistogram GET_ACCOUNT_BY_USERNAME_TIMER =
+        Metrics.daoTimer("AccountDao", "getAccountByUsername");
+    private static final LatencyHistogram AUTHENTICATE_TIMER = Metrics.daoTimer("AccountDao", "authenticate");
+    private static final LatencyHistogram EXISTING_IDS_TIMER = Metrics.daoTimer("AccountDao", "existingIds");
+    /**
+     * Maps an account row. Every account query selects ACCOUNT_COLUMNS.
+     */
+    public static final ColumnMapper<Account> ACCOUNT = new ColumnMapper<>(rs -> new Account(
+        rs.getInt(1), rs.getString(2), rs.getString(3)), "account_id", "username", "password");
+    private static final String ACCOUNT_COLUMNS = ACCOUNT.columns();
+    /**
+     * Every account id known to exist, loaded at construction and extended by save().
+     */
+    private final AccountIdIndex accountIds = new AccountIdIndex();
+    /**
+     * Every username known to be taken, loaded at construction and extended by save(). Sized with the
+     * accounts.bloom.* system properties.
+     */
+    private final BloomFilter usernames = new BloomFilter(
+        Long.getLong("accounts.bloom.expectedInsertions", 1_000_000),
+        Double.parseDouble(System.getProperty("accounts.bloom.fpp", "0.01")));
+    private final LongAdder usernameLookupsSkipped = new LongAdder();
+    private final LongAdder usernameFalsePositives = new LongAdder();
 
     public AccountDao() {
-        this.conn = ConnectionUtil.getConnection();
+        loadIndexes();
+        Metrics.register("username_filter_bits", "Size of the username Bloom filter", "gauge", "",
+            () -> usernames.getStats().bitSize);
+        Metrics.register("username_filter_insertions", "Usernames added to the Bloom filter", "gauge", "",
+            () -> usernames.getStats().insertions);
+        Metrics.register("username_filter_expected_fpp", "Estimated false positive rate of the Bloom filter",
+            "gauge", "", () -> usernames.getStats().expectedFpp);
+        Metrics.register("username_lookups_skipped_total", "Username checks answered by the Bloom filter",
+            "counter", "", usernameLookupsSkipped::sum);
+        Metrics.register("username_filter_false_positives_total",
+            "Username checks the Bloom filter sent to the database for a free name", "counter", "",
+            usernameFalsePositives::sum);
     }
+
     /**
      * 
      * @param account the new user account to be created.
      * @return The new account object includiing its auto-generated id
      */
+    @Override
     public Account save(Account account) {
+        long start = System.nanoTime();
         String sql = "INSERT INTO account(username, password) VALUES(?,?);";
-        try{
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             pstmt.setString(1, account.getUsername());
             pstmt.setString(2, account.getPassword());
             int affectedRows = pstmt.executeUpdate();
 
             if(affectedRows > 0) {
-                ResultSet rs = pstmt.getGeneratedKeys();
-                if(rs.next()) {
-                    account.setAccount_id(rs.getInt("account_id"));
+                try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                    if(rs.next()) {
+                        account.setAccount_id(rs.getInt(1));
+                        accountIds.add(account.getAccount_id());
+                        usernames.add(account.getUsername());
+                    }
                 }
             }
+            pstmt.close();
         } catch(SQLException e) {
             e.printStackTrace();
         }
+        SAVE_TIMER.recordSince(start);
         return account;
     }
 
@@ -45,31 +100,117 @@ public class AccountDao {
      * @param id the id of the account
      * @return the account if it exists
      */
+    @Override
     public Account getAccountById(int id) {
-        String sql = "SELECT * FROM account WHERE account_id = ?;";
+        long start = System.nanoTime();
+        String sql = "SELECT " + ACCOUNT_COLUMNS + " FROM account WHERE account_id = ?;";
         Account account = null;
-        try{
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
             PreparedStatement pstmt = conn.prepareStatement(sql);
             pstmt.setInt(1, id);
-            
-            ResultSet rs = pstmt.executeQuery();
+            account = RowMapper.first(pstmt, ACCOUNT);
+            pstmt.close();
+        } catch(SQLException e) {
+            e.printStackTrace();
+        }
+        GET_ACCOUNT_BY_ID_TIMER.recordSince(start);
+        return account;
+    }
 
-            if (rs.next()) {
-                account = new Account(rs.getInt("account_id"), rs.getString("username"),
-                    rs.getString("password"));
+    /**
+     * To check whether an account with the given id exists. Ids in the in-memory index are answered without a
+     * database round trip; anything else is looked up and added to the index if found.
+     * @param id the id of the account
+     * @return true if the account exists
+     */
+    @Override
+    public boolean exists(int id) {
+        if (accountIds.contains(id)) {
+            return true;
+        }
+        if (getAccountById(id) != null) {
+            accountIds.add(id);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * To check which of the given account ids exist. Ids in the in-memory index are answered without a database
+     * round trip; the rest are looked up together with one query, passed as an array so the statement text is the
+     * same however many there are, and added to the index if found.
+     * @param ids the account ids to check
+     * @return the ids that belong to an account
+     */
+    @Override
+    public Set<Integer> existingIds(Collection<Integer> ids) {
+        Set<Integer> found = new HashSet<>();
+        Set<Integer> unknown = new LinkedHashSet<>();
+        for (int id : ids) {
+            if (accountIds.contains(id)) {
+                found.add(id);
+            } else {
+                unknown.add(id);
             }
+        }
+        if (unknown.isEmpty()) {
+            return found;
+        }
+        long start = System.nanoTime();
+        String sql = "SELECT account_id FROM account WHERE account_id = ANY(?);";
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            PreparedStatement pstmt = conn.prepareStatement(sql);
+            pstmt.setObject(1, unknown.toArray(new Integer[0]));
+            RowMapper.forEach(pstmt, rs -> rs.getInt(1), id -> {
+                found.add(id);
+                accountIds.add(id);
+            });
             pstmt.close();
         } catch(SQLException e) {
             e.printStackTrace();
         }
-        finally {
-            try {
-                conn.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        EXISTING_IDS_TIMER.recordSince(start);
+        return found;
+    }
+
+    /**
+     * To check whether the username already belongs to an account. Names the username filter has never seen are
+     * answered without a database round trip; only possible duplicates are looked up.
+     * @param username the username
+     * @return true if an account with the username exists
+     */
+    @Override
+    public boolean isUsernameTaken(String username) {
+        if (!usernames.mightContain(username)) {
+            usernameLookupsSkipped.increment();
+            return false;
         }
-        return account;
+        if (getAccountByUsername(username) != null) {
+            return true;
+        }
+        usernameFalsePositives.increment();
+        return false;
+    }
+
+    /**
+     * @return the sizing and fill of the username filter
+     */
+    public BloomFilter.Stats getUsernameFilterStats() {
+        return usernames.getStats();
+    }
+
+    /**
+     * @return how many username checks the filter answered without a database lookup
+     */
+    public long getUsernameLookupsSkipped() {
+        return usernameLookupsSkipped.sum();
+    }
+
+    /**
+     * @return how many username checks the filter sent to the database for a name that turned out to be free
+     */
+    public long getUsernameFalsePositives() {
+        return usernameFalsePositives.sum();
     }
 
     /**
@@ -77,23 +218,20 @@ public class AccountDao {
      * @param username the username
      * @return the account if it exists
      */
+    @Override
     public Account getAccountByUsername(String username) {
-        String sql = "SELECT * FROM account WHERE username = ?;";
+        long start = System.nanoTime();
+        String sql = "SELECT " + ACCOUNT_COLUMNS + " FROM account WHERE username = ?;";
         Account account = null;
-        try{
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
             PreparedStatement pstmt = conn.prepareStatement(sql);
             pstmt.setString(1, username);
-            
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                account = new Account(rs.getInt("account_id"), rs.getString("username"),
-                    rs.getString("password"));
-            }
+            account = RowMapper.first(pstmt, ACCOUNT);
             pstmt.close();
         } catch(SQLException e) {
             e.printStackTrace();
         }
+        GET_ACCOUNT_BY_USERNAME_TIMER.recordSince(start);
         return account;
     }
 
@@ -103,24 +241,40 @@ public class AccountDao {
      * @param password the password
      * @return the account if authenticated, null otherwise
      */
+    @Override
     public Account authenticate(String username, String password) {
-        String sql = "SELECT * FROM account WHERE username = ? AND password = ?;";
+        long start = System.nanoTime();
+        String sql = "SELECT " + ACCOUNT_COLUMNS + " FROM account WHERE username = ? AND password = ?;";
         Account account = null;
-        try{
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
             PreparedStatement pstmt = conn.prepareStatement(sql);
             pstmt.setString(1, username);
             pstmt.setString(2, password);
-            
-            ResultSet rs = pstmt.executeQuery();
+            account = RowMapper.first(pstmt, ACCOUNT);
+            pstmt.close();
+        } catch(SQLException e) {
+            e.printStackTrace();
+        }
+        AUTHENTICATE_TIMER.recordSince(start);
+        return account;
+    }
 
-            if (rs.next()) {
-                account = new Account(rs.getInt("account_id"), rs.getString("username"),
-                    rs.getString("password"));
+    /**
+     * To fill the account id index and the username filter from the database in one scan.
+     */
+    private void loadIndexes() {
+        String sql = "SELECT account_id, username FROM account;";
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            PreparedStatement pstmt = conn.prepareStatement(sql);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    accountIds.add(rs.getInt(1));
+                    usernames.add(rs.getString(2));
+                }
             }
             pstmt.close();
         } catch(SQLException e) {
             e.printStackTrace();
         }
-        return account;
     }
 }
@@ -0,0 +1,57 @@
+package DAO;
+
+import java.util.BitSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory set of known account ids, stored as one bit per id. Account ids are small, dense auto-increment
+ * values, so a bitset answers membership in O(1) with about one byte per eight accounts.
+ */
+public class AccountIdIndex {
+    private final BitSet ids = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param id an account id
+     * @return true if the id has been added to the index
+     */
+    public boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            return ids.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param id an account id known to exist
+     */
+    public void add(int id) {
+        if (id < 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            ids.set(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of account ids in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ids.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
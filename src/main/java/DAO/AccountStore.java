@@ -0,0 +1,55 @@
+package DAO;
+
+import java.util.Collection;
+import java.util.Set;
+
+import Model.Account;
+
+/**
+ * Where accounts are kept. AccountDao keeps them in the database; InMemoryAccountStore keeps them on the heap only.
+ * The storage.engine property chooses between them at startup, see {@link StorageEngine}.
+ */
+public interface AccountStore {
+    /**
+     * @param account the new user account to be created.
+     * @return the account including its generated id, or with account_id 0 if it could not be saved
+     */
+    Account save(Account account);
+
+    /**
+     * @param id the id of the account
+     * @return the account if it exists, null otherwise
+     */
+    Account getAccountById(int id);
+
+    /**
+     * @param id the id of the account
+     * @return true if the account exists
+     */
+    boolean exists(int id);
+
+    /**
+     * @param ids the account ids to check
+     * @return the ids that belong to an account
+     */
+    Set<Integer> existingIds(Collection<Integer> ids);
+
+    /**
+     * @param username the username
+     * @return true if an account with the username exists
+     */
+    boolean isUsernameTaken(String username);
+
+    /**
+     * @param username the username
+     * @return the account if it exists, null otherwise
+     */
+    Account getAccountByUsername(String username);
+
+    /**
+     * @param username the username
+     * @param password the password
+     * @return the account if the username and password match one, null otherwise
+     */
+    Account authenticate(String username, String password);
+}
@@ -0,0 +1,39 @@
+package DAO;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A RowMapper over a fixed list of columns. Queries select exactly these columns, named by columns(), at the
+ * start of their select list, so the columns sit at positions 1 to n in every result, in the order they are named,
+ * and the reader gets each one by that index, with no lookup by name at all.
+ * @param <T> the type each row becomes
+ */
+public final class ColumnMapper<T> implements RowMapper<T> {
+    private final String columns;
+    private final RowMapper<T> reader;
+
+    /**
+     * @param reader reads a row, taking the named columns at positions 1 to n
+     * @param names the columns the reader needs, in position order
+     */
+    public ColumnMapper(RowMapper<T> reader, String... names) {
+        this.reader = reader;
+        this.columns = String.join(", ", names);
+    }
+
+    /**
+     * @return the column names, comma separated, for the select list of a query
+     */
+    public String columns() {
+        return columns;
+    }
+
+    /**
+     * @param rs a result set whose select list starts with columns()
+     */
+    @Override
+    public T mapRow(ResultSet rs) throws SQLException {
+        return reader.mapRow(rs);
+    }
+}
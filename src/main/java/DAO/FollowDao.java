@@ -0,0 +1,155 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
+
+public class FollowDao implements FollowStore {
+    /**
+     * Latency of each DAO method, exported at GET /metrics.
+     */
+    private static final LatencyHistogram FOLLOW_TIMER = Metrics.daoTimer("FollowDao", "follow");
+    private static final LatencyHistogram UNFOLLOW_TIMER = Metrics.daoTimer("FollowDao", "unfollow");
+    /**
+     * H2's SQLSTATE for a primary key or unique constraint violation.
+     */
+    private static final String DUPLICATE_KEY = "23505";
+
+    /**
+     * Every follow edge, loaded at construction and kept up to date by follow() and unfollow(). All reads are
+     * answered from it without a database round trip.
+     */
+    private final FollowGraph graph = new FollowGraph();
+
+    public FollowDao() {
+        loadGraph();
+        Metrics.register("follow_edges", "Follow relationships in the follow graph", "gauge", "", graph::size);
+    }
+
+    /**
+     * To record that one account follows another
+     * @param follower_id the account that follows
+     * @param followee_id the account to be followed
+     * @return true if the follow is new, false if it already existed or could not be saved
+     */
+    @Override
+    public boolean follow(int follower_id, int followee_id) {
+        if (graph.contains(follower_id, followee_id)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        String sql = "INSERT INTO follow(follower_id, followee_id) VALUES(?, ?);";
+        boolean created = false;
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            PreparedStatement pstmt = conn.prepareStatement(sql);
+            pstmt.setInt(1, follower_id);
+            pstmt.setInt(2, followee_id);
+            pstmt.executeUpdate();
+            pstmt.close();
+            created = graph.add(follower_id, followee_id);
+        } catch(SQLException e) {
+            if (DUPLICATE_KEY.equals(e.getSQLState())) {
+                // saved by someone else since the graph was loaded
+                graph.add(follower_id, followee_id);
+            } else {
+                e.printStackTrace();
+            }
+        }
+        FOLLOW_TIMER.recordSince(start);
+        return created;
+    }
+
+    /**
+     * To remove a follow
+     * @param follower_id the account that follows
+     * @param followee_id the account followed
+     * @return true if the follow existed and was removed
+     */
+    @Override
+    public boolean unfollow(int follower_id, int followee_id) {
+        long start = System.nanoTime();
+        String sql = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?;";
+        boolean removed = false;
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            PreparedStatement pstmt = conn.prepareStatement(sql);
+            pstmt.setInt(1, follower_id);
+            pstmt.setInt(2, followee_id);
+            removed = pstmt.executeUpdate() > 0;
+            pstmt.close();
+            graph.remove(follower_id, followee_id);
+        } catch(SQLException e) {
+            e.printStackTrace();
+        }
+        UNFOLLOW_TIMER.recordSince(start);
+        return removed;
+    }
+
+    /**
+     * @param follower_id the account that might follow
+     * @param followee_id the account that might be followed
+     * @return true if follower_id follows followee_id
+     */
+    @Override
+    public boolean isFollowing(int follower_id, int followee_id) {
+        return graph.contains(follower_id, followee_id);
+    }
+
+    /**
+     * @param account_id an account id
+     * @return the ids of the accounts it follows, ascending
+     */
+    @Override
+    public int[] getFollowing(int account_id) {
+        return graph.following(account_id);
+    }
+
+    /**
+     * @param account_id an account id
+     * @return the ids of the accounts following it, ascending
+     */
+    @Override
+    public int[] getFollowers(int account_id) {
+        return graph.followers(account_id);
+    }
+
+    /**
+     * @param account_id an account id
+     * @return the number of accounts it follows
+     */
+    @Override
+    public int getFollowingCount(int account_id) {
+        return graph.followingCount(account_id);
+    }
+
+    /**
+     * @param account_id an account id
+     * @return the number of accounts following it
+     */
+    @Override
+    public int getFollowerCount(int account_id) {
+        return graph.followerCount(account_id);
+    }
+
+    /**
+     * Fills the follow graph with one scan of the follow table.
+     */
+    private void loadGraph() {
+        String sql = "SELECT follower_id, followee_id FROM follow;";
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            PreparedStatement pstmt = conn.prepareStatement(sql);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    graph.add(rs.getInt(1), rs.getInt(2));
+                }
+            }
+            pstmt.close();
+        } catch(SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package DAO;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Util.IntHashSet;
+
+/**
+ * An in-memory copy of the follow table as adjacency sets in both directions. Account ids are small and dense, so
+ * each direction is an array indexed by account id holding a primitive {@link IntHashSet} per account that has any
+ * follows, which makes "does A follow B" and follower counts O(1) without boxing a single id.
+ */
+public class FollowGraph {
+    private static final int[] NONE = new int[0];
+
+    private IntHashSet[] following = new IntHashSet[16];
+    private IntHashSet[] followers = new IntHashSet[16];
+    private long edges;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param follower the account that follows
+     * @param followee the account followed
+     * @return true if the edge was not already in the graph
+     */
+    public boolean add(int follower, int followee) {
+        if (follower < 0 || followee < 0) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            following = ensureCapacity(following, follower);
+            followers = ensureCapacity(followers, followee);
+            if (following[follower] == null) {
+                following[follower] = new IntHashSet();
+            }
+            if (!following[follower].add(followee)) {
+                return false;
+            }
+            if (followers[followee] == null) {
+                followers[followee] = new IntHashSet();
+            }
+            followers[followee].add(follower);
+            edges++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param follower the account that follows
+     * @param followee the account followed
+     * @return true if the edge was in the graph
+     */
+    public boolean remove(int follower, int followee) {
+        lock.writeLock().lock();
+        try {
+            IntHashSet out = get(following, follower);
+            if (out == null || !out.remove(followee)) {
+                return false;
+            }
+            get(followers, followee).remove(follower);
+            edges--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param follower the account that might follow
+     * @param followee the account that might be followed
+     * @return true if follower follows followee
+     */
+    public boolean contains(int follower, int followee) {
+        lock.readLock().lock();
+        try {
+            IntHashSet out = get(following, follower);
+            return out != null && out.contains(followee);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param account an account id
+     * @return the ids of the accounts it follows, ascending
+     */
+    public int[] following(int account) {
+        return members(following, account);
+    }
+
+    /**
+     * @param account an account id
+     * @return the ids of the accounts following it, ascending
+     */
+    public int[] followers(int account) {
+        return members(followers, account);
+    }
+
+    /**
+     * @param account an account id
+     * @return the number of accounts it follows
+     */
+    public int followingCount(int account) {
+        return count(following, account);
+    }
+
+    /**
+     * @param account an account id
+     * @return the number of accounts following it
+     */
+    public int followerCount(int account) {
+        return count(followers, account);
+    }
+
+    /**
+     * @return the number of follow edges in the graph
+     */
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return edges;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] members(IntHashSet[] sets, int account) {
+        lock.readLock().lock();
+        try {
+            IntHashSet set = get(sets, account);
+            return set == null ? NONE : set.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int count(IntHashSet[] sets, int account) {
+        lock.readLock().lock();
+        try {
+            IntHashSet set = get(sets, account);
+            return set == null ? 0 : set.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static IntHashSet get(IntHashSet[] sets, int account) {
+        return account >= 0 && account < sets.length ? sets[account] : null;
+    }
+
+    private static IntHashSet[] ensureCapacity(IntHashSet[] sets, int account) {
+        if (account < sets.length) {
+            return sets;
+        }
+        return Arrays.copyOf(sets, Math.max(account + 1, sets.length + (sets.length >> 1)));
+    }
+}
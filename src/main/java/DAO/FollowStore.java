@@ -0,0 +1,52 @@
+package DAO;
+
+/**
+ * Where follows are kept. FollowDao keeps them in the database; InMemoryFollowStore keeps them on the heap only.
+ * The storage.engine property chooses between them at startup, see {@link StorageEngine}.
+ */
+public interface FollowStore {
+    /**
+     * @param follower_id the account that follows
+     * @param followee_id the account to be followed
+     * @return true if the follow is new, false if it already existed or could not be saved
+     */
+    boolean follow(int follower_id, int followee_id);
+
+    /**
+     * @param follower_id the account that follows
+     * @param followee_id the account followed
+     * @return true if the follow existed and was removed
+     */
+    boolean unfollow(int follower_id, int followee_id);
+
+    /**
+     * @param follower_id the account that might follow
+     * @param followee_id the account that might be followed
+     * @return true if follower_id follows followee_id
+     */
+    boolean isFollowing(int follower_id, int followee_id);
+
+    /**
+     * @param account_id an account id
+     * @return the ids of the accounts it follows, ascending
+     */
+    int[] getFollowing(int account_id);
+
+    /**
+     * @param account_id an account id
+     * @return the ids of the accounts following it, ascending
+     */
+    int[] getFollowers(int account_id);
+
+    /**
+     * @param account_id an account id
+     * @return the number of accounts it follows
+     */
+    int getFollowingCount(int account_id);
+
+    /**
+     * @param account_id an account id
+     * @return the number of accounts following it
+     */
+    int getFollowerCount(int account_id);
+}
@@ -0,0 +1,167 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import Model.Message;
+
+/**
+ * Saves messages through a single writer thread that groups concurrent inserts into one JDBC batch and one
+ * commit. A caller of {@link #save(Message)} blocks until the batch holding its message has been committed, so
+ * it still gets its generated message_id synchronously, but the cost of the commit is shared by the whole batch.
+ */
+public class GroupCommitWriter {
+    private final MessageStore messageStore;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * @param messageStore the store the batches are written through
+     * @param windowMicros how long the writer waits for more messages after the first one of a batch arrives
+     * @param maxBatchSize the most messages written in one batch
+     */
+    public GroupCommitWriter(MessageStore messageStore, long windowMicros, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.messageStore = messageStore;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+        this.writer = new Thread(this::run, "message-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the message for the next batch and waits for that batch to commit.
+     * @param message the message to be persisted
+     * @return the message with its auto generated message_id, or with message_id 0 if it could not be saved
+     */
+    public Message save(Message message) {
+        if (!running) {
+            return messageStore.save(message);
+        }
+        PendingWrite write = new PendingWrite(message);
+        queue.add(write);
+        if (!running && queue.remove(write)) {
+            // closed while queueing and the writer may already have exited: whatever it has not taken is ours
+            return messageStore.save(message);
+        }
+        return write.result.join();
+    }
+
+    /**
+     * Stops the writer thread and waits until the writes already queued have been flushed, so the store can be
+     * closed after it.
+     */
+    public void close() {
+        running = false;
+        writer.interrupt();
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                batch.add(queue.take());
+                collect(batch);
+            } catch (InterruptedException e) {
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    /**
+     * Adds to the batch whatever is already queued, then keeps waiting for more until the window closes or the
+     * batch is full.
+     */
+    private void collect(List<PendingWrite> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                return;
+            }
+            PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Writes the batch in one transaction. If the batch as a whole is rejected or fails, each message is retried
+     * on its own so one bad row does not fail the others.
+     */
+    private void flush(List<PendingWrite> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            messages.add(write.message);
+        }
+        try {
+            boolean failed = false;
+            try {
+                messageStore.saveAll(messages);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                failed = true;
+                for (Message message : messages) {
+                    message.setMessage_id(0);
+                }
+            }
+            for (PendingWrite write : batch) {
+                if (write.message.getMessage_id() == 0 && (failed || batch.size() > 1)) {
+                    try {
+                        messageStore.save(write.message);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        } finally {
+            for (PendingWrite write : batch) {
+                write.result.complete(write.message);
+            }
+        }
+    }
+
+    /**
+     * A message waiting for its batch, and the future its caller is blocked on.
+     */
+    private static final class PendingWrite {
+        final Message message;
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingWrite(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package DAO;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Model.Account;
+import Util.ConcurrentIdMap;
+
+/**
+ * Accounts kept on the heap only. Ids come from an atomic sequence and index a {@link ConcurrentIdMap}; usernames
+ * are claimed with putIfAbsent, so two registrations of one name cannot both succeed. Callers get copies, so
+ * changing a returned account does not change the stored one.
+ */
+public class InMemoryAccountStore implements AccountStore {
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final ConcurrentIdMap<Account> accounts = new ConcurrentIdMap<>();
+    private final Map<String, Account> byUsername = new ConcurrentHashMap<>();
+
+    @Override
+    public Account save(Account account) {
+        if (account.getUsername() == null) {
+            return account;
+        }
+        Account stored = new Account(sequence.incrementAndGet(), account.getUsername(), account.getPassword());
+        if (byUsername.putIfAbsent(stored.getUsername(), stored) == null) {
+            accounts.put(stored.getAccount_id(), stored);
+            account.setAccount_id(stored.getAccount_id());
+        }
+        return account;
+    }
+
+    @Override
+    public Account getAccountById(int id) {
+        return copy(accounts.get(id));
+    }
+
+    @Override
+    public boolean exists(int id) {
+        return accounts.get(id) != null;
+    }
+
+    @Override
+    public Set<Integer> existingIds(Collection<Integer> ids) {
+        Set<Integer> found = new HashSet<>();
+        for (int id : ids) {
+            if (accounts.get(id) != null) {
+                found.add(id);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username) {
+        return username != null && byUsername.containsKey(username);
+    }
+
+    @Override
+    public Account getAccountByUsername(String username) {
+        return username == null ? null : copy(byUsername.get(username));
+    }
+
+    @Override
+    public Account authenticate(String username, String password) {
+        Account account = username == null ? null : byUsername.get(username);
+        return account != null && account.getPassword().equals(password) ? copy(account) : null;
+    }
+
+    private static Account copy(Account account) {
+        return account == null ? null
+            : new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+    }
+}
@@ -0,0 +1,49 @@
+package DAO;
+
+import Util.Metrics;
+
+/**
+ * Follows kept in a {@link FollowGraph} only, with no table behind it.
+ */
+public class InMemoryFollowStore implements FollowStore {
+    private final FollowGraph graph = new FollowGraph();
+
+    public InMemoryFollowStore() {
+        Metrics.register("follow_edges", "Follow relationships in the follow graph", "gauge", "", graph::size);
+    }
+
+    @Override
+    public boolean follow(int follower_id, int followee_id) {
+        return graph.add(follower_id, followee_id);
+    }
+
+    @Override
+    public boolean unfollow(int follower_id, int followee_id) {
+        return graph.remove(follower_id, followee_id);
+    }
+
+    @Override
+    public boolean isFollowing(int follower_id, int followee_id) {
+        return graph.contains(follower_id, followee_id);
+    }
+
+    @Override
+    public int[] getFollowing(int account_id) {
+        return graph.following(account_id);
+    }
+
+    @Override
+    public int[] getFollowers(int account_id) {
+        return graph.followers(account_id);
+    }
+
+    @Override
+    public int getFollowingCount(int account_id) {
+        return graph.followingCount(account_id);
+    }
+
+    @Override
+    public int getFollowerCount(int account_id) {
+        return graph.followerCount(account_id);
+    }
+}
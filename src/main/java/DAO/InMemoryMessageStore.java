@@ -0,0 +1,109 @@
+package DAO;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Model.Message;
+import Util.ConcurrentIdMap;
+
+/**
+ * Messages kept on the heap only. Ids come from an atomic sequence and index a {@link ConcurrentIdMap}, so reads
+ * in id order are a walk along an array. A delete or edit replaces the stored message with compare-and-set and
+ * retries if another writer got there first. The indexes are then brought up to date under a lock striped by id,
+ * and only for the message still stored, so a late update cannot put back a message a delete has just taken out.
+ *
+ * Stored messages are never handed out. Callers get copies, and an edit stores a new message in place of the old.
+ */
+public class InMemoryMessageStore extends IndexedMessageStore {
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final ConcurrentIdMap<Message> messages = new ConcurrentIdMap<>();
+    private final Object[] indexLocks = new Object[64];
+
+    public InMemoryMessageStore() {
+        for (int i = 0; i < indexLocks.length; i++) {
+            indexLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public Message save(Message message) {
+        store(message);
+        changed();
+        return message;
+    }
+
+    @Override
+    public List<Message> saveAll(List<Message> batch) {
+        for (Message message : batch) {
+            store(message);
+        }
+        changed();
+        return batch;
+    }
+
+    @Override
+    public Message remove(int id, int posted_by) {
+        while (true) {
+            Message message = messages.get(id);
+            if (message == null || (posted_by > 0 && message.getPosted_by() != posted_by)) {
+                return new Message();
+            }
+            if (messages.remove(id, message)) {
+                synchronized (indexLock(id)) {
+                    unindexed(message);
+                }
+                changed();
+                return copy(message);
+            }
+        }
+    }
+
+    @Override
+    public Message updateText(int id, String message_text, int posted_by) {
+        while (true) {
+            Message message = messages.get(id);
+            if (message == null || (posted_by > 0 && message.getPosted_by() != posted_by)) {
+                return new Message();
+            }
+            Message updated = new Message(id, message.getPosted_by(), message_text, message.getTime_posted_epoch());
+            if (messages.replace(id, message, updated)) {
+                synchronized (indexLock(id)) {
+                    if (messages.get(id) == updated) {
+                        textChanged(id, message_text);
+                    }
+                }
+                changed();
+                return copy(updated);
+            }
+        }
+    }
+
+    @Override
+    Message load(int id) {
+        Message message = messages.get(id);
+        return message == null ? null : copy(message);
+    }
+
+    @Override
+    int nextId(int after) {
+        return messages.nextId(after);
+    }
+
+    /**
+     * Gives the message the next id and stores a copy of it.
+     */
+    private void store(Message message) {
+        message.setMessage_id(sequence.incrementAndGet());
+        Message stored = copy(message);
+        messages.put(stored.getMessage_id(), stored);
+        synchronized (indexLock(stored.getMessage_id())) {
+            if (messages.get(stored.getMessage_id()) == stored) {
+                indexed(stored);
+            }
+        }
+    }
+
+    private Object indexLock(int id) {
+        return indexLocks[id & (indexLocks.length - 1)];
+    }
+}
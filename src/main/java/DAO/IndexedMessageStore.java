@@ -0,0 +1,240 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import Model.Message;
+import Util.ConcurrentIdMap;
+import Util.Metrics;
+
+/**
+ * The reads of a message store that keeps its own indexes on the heap rather than asking a database: each poster's
+ * message ids in ConcurrentSkipListSets, once by id and once by time, so their messages and a page of their timeline
+ * are found without a scan, and the text of every message in a {@link MessageSearchIndex}. Subclasses say where the messages themselves live, and call indexed(),
+ * unindexed() and textChanged() as they write.
+ */
+abstract class IndexedMessageStore implements MessageStore {
+    /**
+     * Oldest first by time_posted_epoch and then message_id, the reverse of the timeline.
+     */
+    private static final Comparator<TimelineKey> BY_TIME = Comparator
+        .comparingLong((TimelineKey key) -> key.time).thenComparingInt(key -> key.id);
+
+    private final ConcurrentIdMap<NavigableSet<Integer>> byPoster = new ConcurrentIdMap<>();
+    private final ConcurrentIdMap<NavigableSet<TimelineKey>> timelines = new ConcurrentIdMap<>();
+    private final AtomicLong version = new AtomicLong(ThreadLocalRandom.current().nextLong());
+    private final MessageSearchIndex searchIndex = new MessageSearchIndex();
+
+    IndexedMessageStore() {
+        Metrics.register("message_search_index_messages", "Messages in the search index", "gauge", "",
+            searchIndex::size);
+        Metrics.register("message_search_index_terms", "Distinct terms in the search index", "gauge", "",
+            searchIndex::termCount);
+    }
+
+    /**
+     * @param id a message id
+     * @return a copy of the message, which the caller may change, or null if there is none
+     */
+    abstract Message load(int id);
+
+    /**
+     * @param after a message id, or 0 to start from the beginning
+     * @return the lowest id greater than after that may hold a message, or -1 if there is none
+     */
+    abstract int nextId(int after);
+
+    /**
+     * To add a stored message to the poster and search indexes.
+     */
+    void indexed(Message message) {
+        if (message.getPosted_by() >= 0) {
+            byPoster.computeIfAbsent(message.getPosted_by(), poster -> new ConcurrentSkipListSet<>())
+                .add(message.getMessage_id());
+            timelines.computeIfAbsent(message.getPosted_by(), poster -> new ConcurrentSkipListSet<>(BY_TIME))
+                .add(new TimelineKey(message.getTime_posted_epoch(), message.getMessage_id()));
+        }
+        searchIndex.add(message.getMessage_id(), message.getMessage_text());
+    }
+
+    /**
+     * To remove a deleted message from the poster and search indexes.
+     */
+    void unindexed(Message message) {
+        postedBy(message.getPosted_by()).remove(message.getMessage_id());
+        timeline(message.getPosted_by()).remove(new TimelineKey(message.getTime_posted_epoch(),
+            message.getMessage_id()));
+        searchIndex.remove(message.getMessage_id());
+    }
+
+    /**
+     * To reindex the text of an edited message.
+     */
+    void textChanged(int id, String message_text) {
+        searchIndex.add(id, message_text);
+    }
+
+    /**
+     * To move the version on after a change.
+     */
+    void changed() {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public List<Message> getAll() {
+        List<Message> all = new ArrayList<>();
+        forEach(all::add);
+        return all;
+    }
+
+    @Override
+    public void forEach(Consumer<Message> consumer) {
+        for (int id = nextId(0); id > 0; id = nextId(id)) {
+            Message message = load(id);
+            if (message != null) {
+                consumer.accept(message);
+            }
+        }
+    }
+
+    @Override
+    public void forEachByUser(int posted_by, Consumer<Message> consumer) {
+        for (int id : postedBy(posted_by)) {
+            Message message = load(id);
+            if (message != null) {
+                consumer.accept(message);
+            }
+        }
+    }
+
+    @Override
+    public List<Message> getPage(int afterId, int limit) {
+        List<Message> page = new ArrayList<>();
+        for (int id = nextId(Math.max(afterId, 0)); id > 0 && page.size() < limit; id = nextId(id)) {
+            Message message = load(id);
+            if (message != null) {
+                page.add(message);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public Message getMessageById(int id) {
+        Message message = load(id);
+        return message == null ? new Message() : message;
+    }
+
+    @Override
+    public MessageSearchIndex.SearchResult search(String query, int offset, int limit) {
+        return searchIndex.search(query, offset, limit);
+    }
+
+    @Override
+    public int[] getNewestIdsByPosters(int[] posters, int limit) {
+        int[] newest = new int[0];
+        int count = 0;
+        for (int poster : posters) {
+            Iterator<Integer> ids = postedBy(poster).descendingIterator();
+            for (int taken = 0; taken < limit && ids.hasNext(); taken++) {
+                if (count == newest.length) {
+                    newest = Arrays.copyOf(newest, Math.max(16, count * 2));
+                }
+                newest[count++] = ids.next();
+            }
+        }
+        Arrays.sort(newest, 0, count);
+        return Arrays.copyOfRange(newest, Math.max(0, count - limit), count);
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(int[] ids) {
+        List<Message> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Message message = load(id);
+            if (message != null) {
+                found.add(message);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public List<Message> getMessagesByUser(int posted_by) {
+        List<Message> posted = new ArrayList<>();
+        forEachByUser(posted_by, posted::add);
+        return posted;
+    }
+
+    /**
+     * Seeks to the cursor in the poster's time index and walks it backwards, so a page costs its own size however
+     * long the poster's history is.
+     */
+    @Override
+    public List<Message> getTimelinePage(int posted_by, long[] before, int limit) {
+        NavigableSet<TimelineKey> keys = timeline(posted_by);
+        if (before != null) {
+            // a cursor id past the int range still takes every message at that time
+            boolean inclusive = before[1] > Integer.MAX_VALUE;
+            int id = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, before[1]));
+            keys = keys.headSet(new TimelineKey(before[0], id), inclusive);
+        }
+        List<Message> page = new ArrayList<>(Math.min(limit, 64));
+        Iterator<TimelineKey> newest = keys.descendingIterator();
+        while (page.size() < limit && newest.hasNext()) {
+            Message message = load(newest.next().id);
+            if (message != null) {
+                page.add(message);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * @return the ids of the poster's messages, ascending; empty if it has posted none
+     */
+    private NavigableSet<Integer> postedBy(int posted_by) {
+        NavigableSet<Integer> ids = posted_by < 0 ? null : byPoster.get(posted_by);
+        return ids == null ? new ConcurrentSkipListSet<>() : ids;
+    }
+
+    /**
+     * @return the poster's messages by time, oldest first; empty if it has posted none
+     */
+    private NavigableSet<TimelineKey> timeline(int posted_by) {
+        NavigableSet<TimelineKey> keys = posted_by < 0 ? null : timelines.get(posted_by);
+        return keys == null ? new ConcurrentSkipListSet<>(BY_TIME) : keys;
+    }
+
+    static Message copy(Message message) {
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+            message.getTime_posted_epoch());
+    }
+
+    /**
+     * A message's place in its poster's timeline.
+     */
+    private static final class TimelineKey {
+        final long time;
+        final int id;
+
+        TimelineKey(long time, int id) {
+            this.time = time;
+            this.id = id;
+        }
+    }
+}
@@ -6,16 +6,155 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
 
-public class MessageDao {
-    private Connection conn;
+public class MessageDao implements MessageStore {
+    /**
+     * Latency of each DAO method, exported at GET /metrics.
+     */
+    private static final LatencyHistogram SAVE_TIMER = Metrics.daoTimer("MessageDao", "save");
+    private static final LatencyHistogram SAVE_ALL_TIMER = Metrics.daoTimer("MessageDao", "saveAll");
+    private static final LatencyHistogram GET_ALL_TIMER = Metrics.daoTimer("MessageDao", "getAll");
+    private static final LatencyHistogram FOR_EACH_TIMER = Metrics.daoTimer("MessageDao", "forEach");
+    private static final LatencyHistogram FOR_EACH_BY_USER_TIMER = Metrics.daoTimer("MessageDao", "forEachByUser");
+    private static final LatencyHistogram GET_PAGE_TIMER = Metrics.daoTimer("MessageDao", "getPage");
+    private static final LatencyHistogram GET_MESSAGE_BY_ID_TIMER =
+        Metrics.daoTimer("MessageDao", "getMessageById");
+    private static final LatencyHistogram REMOVE_TIMER = Metrics.daoTimer("MessageDao", "remove");
+    private static final LatencyHistogram UPDATE_TEXT_TIMER = Metrics.daoTimer("MessageDao", "updateText");
+    private static final LatencyHistogram GET_MESSAGES_BY_USER_TIMER =
+        Metrics.daoTimer("MessageDao", "getMessagesByUser");
+    private static final LatencyHistogram GET_TIMELINE_PAGE_TIMER =
+        Metrics.daoTimer("MessageDao", "getTimelinePage");
+    private static final LatencyHistogram GET_MESSAGES_BY_IDS_TIMER =
+        Metrics.daoTimer("MessageDao", "getMessagesByIds");
+    private static final LatencyHistogram SEARCH_TIMER = Metrics.daoTimer("MessageDao", "search");
+    private static final LatencyHistogram GET_NEWEST_IDS_BY_POSTERS_TIMER =
+        Metrics.daoTimer("MessageDao", "getNewestIdsByPosters");
+
+    /**
+     * Maps a message row. Every message query selects MESSAGE_COLUMNS.
+     */
+    public static final ColumnMapper<Message> MESSAGE = new ColumnMapper<>(rs -> new Message(
+        rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)),
+        "message_id", "posted_by", "message_text", "time_posted_epoch");
+    private static final String MESSAGE_COLUMNS = MESSAGE.columns();
+
+    private static final int STREAM_FETCH_SIZE = 256;
+    /**
+     * Tables with fewer messages than this per scanning thread are indexed by a single thread.
+     */
+    private static final int MIN_MESSAGES_PER_SCAN = 10_000;
+
+    /**
+     * Moves on after every committed change to the message table made through this DAO. It starts from a random
+     * value so versions handed out before a restart are not reused by the next process.
+     */
+    private final AtomicLong version = new AtomicLong(ThreadLocalRandom.current().nextLong());
+    /**
+     * The text of every message, indexed for search. Built at construction and kept up to date by every write.
+     */
+    private final MessageSearchIndex searchIndex = new MessageSearchIndex();
 
     public MessageDao() {
-        this.conn = ConnectionUtil.getConnection();
+        loadSearchIndex();
+        Metrics.register("message_search_index_messages", "Messages in the search index", "gauge", "",
+            searchIndex::size);
+        Metrics.register("message_search_index_terms", "Distinct terms in the search index", "gauge", "",
+            searchIndex::termCount);
+    }
+
+    /**
+     * Builds the search index with one scan of the message table, split into id ranges that are read and
+     * tokenized in parallel, each on its own connection, and then joined in id order.
+     */
+    private void loadSearchIndex() {
+        long[] range = idRange();
+        if (range == null) {
+            return;
+        }
+        int minId = (int) range[0];
+        int maxId = (int) range[1];
+        int threads = (int) Math.max(1, Math.min(range[2] / MIN_MESSAGES_PER_SCAN,
+            Math.min(Runtime.getRuntime().availableProcessors(), ConnectionUtil.getPoolStats().maxSize)));
+        if (threads == 1) {
+            scanInto(searchIndex, minId, maxId);
+            return;
+        }
+        long span = ((long) maxId - minId + threads) / threads;
+        ExecutorService scanners = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<MessageSearchIndex>> parts = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int from = (int) Math.min(maxId, minId + span * i);
+                int to = (int) Math.min(maxId, minId + span * (i + 1) - 1);
+                parts.add(scanners.submit(() -> scanInto(new MessageSearchIndex(), from, to)));
+            }
+            for (Future<MessageSearchIndex> part : parts) {
+                searchIndex.append(part.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            scanners.shutdown();
+        }
+    }
+
+    /**
+     * @return the lowest message_id, the highest and the number of messages, or null if there are none
+     */
+    private long[] idRange() {
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT MIN(message_id), MAX(message_id), COUNT(*) FROM message;");
+            long[] range = RowMapper.first(pstmt, rs -> new long[] { rs.getInt(1), rs.getInt(2), rs.getLong(3) });
+            pstmt.close();
+            if (range[2] > 0) {
+                return range;
+            }
+        } catch(SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * @param index the index to add to
+     * @param from the lowest message_id to scan
+     * @param to the highest message_id to scan
+     * @return the index, with every message in the id range added
+     */
+    private MessageSearchIndex scanInto(MessageSearchIndex index, int from, int to) {
+        stream("SELECT " + MESSAGE_COLUMNS + " FROM message WHERE message_id BETWEEN ? AND ? ORDER BY message_id;",
+            message -> index.add(message.getMessage_id(), message.getMessage_text()), from, to);
+        return index;
+    }
+
+    /**
+     * A reader that takes the version before its query and tags its result with it is never newer than the data
+     * it read, so a client holding that tag at worst refetches once more than it needed to.
+     * @return the current version of the message table
+     */
+    @Override
+    public long getVersion() {
+        return version.get();
     }
 
     /**
@@ -23,11 +162,13 @@ public class MessageDao {
      * @param message the message to be persisted
      * @return the message with its auto generated message_id
      */
+    @Override
     public Message save(Message message) {
+        long start = System.nanoTime();
         String sql = "INSERT INTO message(posted_by, message_text, time_posted_epoch) " +
             "VALUES(?, ?, ?);";
         
-        try{
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             pstmt.setInt(1, message.getPosted_by());
             pstmt.setString(2, message.getMessage_text());
@@ -35,40 +176,168 @@ public class MessageDao {
             int affectedRows = pstmt.executeUpdate();
 
             if(affectedRows > 0) {
-                ResultSet rs = pstmt.getGeneratedKeys();
-                if(rs.next()) {
-                    message.setMessage_id(rs.getInt(1));
+                try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                    if(rs.next()) {
+                        message.setMessage_id(rs.getInt(1));
+                        searchIndex.add(message.getMessage_id(), message.getMessage_text());
+                    }
                 }
+                version.incrementAndGet();
             }
             pstmt.close();
         } catch(SQLException e) {
             e.printStackTrace();
         }
+        SAVE_TIMER.recordSince(start);
         return message;
     }
 
+    /**
+     * To persist several messages with one JDBC batch in a single transaction. Either every message is saved or,
+     * if any insert fails, none are.
+     * @param messages the messages to be persisted
+     * @return the same messages with their auto generated message_id, or with message_id 0 if the batch failed
+     */
+    @Override
+    public List<Message> saveAll(List<Message> messages) {
+        long start = System.nanoTime();
+        String sql = "INSERT INTO message(posted_by, message_text, time_posted_epoch) " +
+            "VALUES(?, ?, ?);";
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                for (Message message : messages) {
+                    pstmt.setInt(1, message.getPosted_by());
+                    pstmt.setString(2, message.getMessage_text());
+                    pstmt.setLong(3, message.getTime_posted_epoch());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                    for (int i = 0; i < messages.size() && rs.next(); i++) {
+                        messages.get(i).setMessage_id(rs.getInt(1));
+                    }
+                }
+                pstmt.close();
+                conn.commit();
+                for (Message message : messages) {
+                    searchIndex.add(message.getMessage_id(), message.getMessage_text());
+                }
+                version.incrementAndGet();
+            } catch (SQLException e) {
+                conn.rollback();
+                for (Message message : messages) {
+                    message.setMessage_id(0);
+                }
+                throw e;
+            }
+        } catch(SQLException e) {
+            e.printStackTrace();
+        }
+        SAVE_ALL_TIMER.recordSince(start);
+        return messages;
+    }
+
     /**
      * To get a list of all messages from the database.
      * @return a list of all messages if any, and an empty list otherwise
      */
+    @Override
     public List<Message> getAll() {
-        String sql = "SELECT * FROM message;";
+        long start = System.nanoTime();
+        String sql = "SELECT " + MESSAGE_COLUMNS + " FROM message;";
         List<Message> messages = new ArrayList<>();
-        try{
-           Statement stmt = conn.createStatement();
-           ResultSet rs = stmt.executeQuery(sql);
-
-           while(rs.next()) {
-            Message message = new Message(rs.getInt("message_id"),
-                                rs.getInt("posted_by"),
-                                rs.getString("message_text"),
-                                rs.getLong("time_posted_epoch"));
-            messages.add(message);
-           }
-           stmt.close();
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+           PreparedStatement pstmt = conn.prepareStatement(sql);
+           messages = RowMapper.list(pstmt, MESSAGE);
+           pstmt.close();
         } catch(SQLException e) {
             e.printStackTrace();
         }
+        GET_ALL_TIMER.recordSince(start);
+        return messages;
+    }
+
+    /**
+     * To hand every message in the database to the given consumer, one row at a time, without building a list.
+     * The query runs in lazy mode so H2 produces rows as they are read instead of materializing the result.
+     * @param consumer receives each message in message_id order
+     */
+    @Override
+    public void forEach(Consumer<Message> consumer) {
+        long start = System.nanoTime();
+        stream("SELECT " + MESSAGE_COLUMNS + " FROM message ORDER BY message_id;", consumer);
+        FOR_EACH_TIMER.recordSince(start);
+    }
+
+    /**
+     * To hand every message posted by the given account to the consumer, one row at a time.
+     * @param posted_by The account_id of the messages poster.
+     * @param consumer receives each message in message_id order
+     */
+    @Override
+    public void forEachByUser(int posted_by, Consumer<Message> consumer) {
+        long start = System.nanoTime();
+        stream("SELECT " + MESSAGE_COLUMNS + " FROM message WHERE posted_by = ? ORDER BY message_id;", consumer,
+            posted_by);
+        FOR_EACH_BY_USER_TIMER.recordSince(start);
+    }
+
+    /**
+     * Runs a message query lazily and feeds its rows to the consumer. If the consumer throws, the query is
+     * abandoned and the connection is returned to the pool.
+     * @param sql the query
+     * @param consumer receives each row
+     * @param params the values of the query's int parameters, in order
+     * @throws IllegalStateException if the query fails, possibly after some rows were already handed out, so the
+     * caller does not mistake the rows it got for all of them
+     */
+    private void stream(String sql, Consumer<Message> consumer, int... params) {
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            Statement session = conn.createStatement();
+            session.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            try {
+                PreparedStatement pstmt = conn.prepareStatement(sql);
+                for (int i = 0; i < params.length; i++) {
+                    pstmt.setInt(i + 1, params[i]);
+                }
+                pstmt.setFetchSize(STREAM_FETCH_SIZE);
+                RowMapper.forEach(pstmt, MESSAGE, consumer);
+                pstmt.close();
+            } finally {
+                session.execute("SET LAZY_QUERY_EXECUTION FALSE");
+            }
+        } catch(SQLException e) {
+            throw new IllegalStateException("Message query failed: " + sql, e);
+        }
+    }
+
+    /**
+     * To get one page of messages in message_id order, starting after the given id. This is a range scan on the
+     * primary key index, so its cost does not depend on how deep into the table the page is.
+     * @param afterId only messages with a greater message_id are returned, 0 to start from the beginning
+     * @param limit the maximum number of messages to return
+     * @return the messages on the page, in ascending message_id order
+     */
+    @Override
+    public List<Message> getPage(int afterId, int limit) {
+        long start = System.nanoTime();
+        String sql = "SELECT " + MESSAGE_COLUMNS + " FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?;";
+        List<Message> messages = new ArrayList<>();
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+           PreparedStatement pstmt = conn.prepareStatement(sql);
+           pstmt.setInt(1, afterId);
+           pstmt.setInt(2, limit);
+           messages = RowMapper.list(pstmt, MESSAGE);
+           pstmt.close();
+        } catch(SQLException e) {
+            e.printStackTrace();
+        }
+        GET_PAGE_TIMER.recordSince(start);
         return messages;
     }
 
@@ -77,84 +346,241 @@ public class MessageDao {
      * @param id the id of the message to be retrieved
      * @return the message if it exists, an empty message object otherwise
      */
+    @Override
     public Message getMessageById(int id) {
-        String sql = "SELECT * FROM message WHERE message_id = ?;";
+        long start = System.nanoTime();
+        String sql = "SELECT " + MESSAGE_COLUMNS + " FROM message WHERE message_id = ?;";
         Message message = new Message();
-        try{
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
             PreparedStatement pstmt = conn.prepareStatement(sql);
             pstmt.setInt(1, id);
-
-            ResultSet rs = pstmt.executeQuery();
-
-            if(rs.next()) {
-                message.setMessage_id(rs.getInt("message_id"));
-                message.setPosted_by(rs.getInt("posted_by"));
-                message.setMessage_text(rs.getString("message_text"));
-                message.setTime_posted_epoch(rs.getLong("time_posted_epoch"));
+            Message found = RowMapper.first(pstmt, MESSAGE);
+            if (found != null) {
+                message = found;
             }
             pstmt.close();
         } catch(SQLException e) {
             e.printStackTrace();
         }
+        GET_MESSAGE_BY_ID_TIMER.recordSince(start);
         return message;
     }
 
     /**
-     * To delete the message with the given id from the database.
+     * To delete the message with the given id if the given account posted it, in one statement
      * @param id the message_id
+     * @param posted_by the account that must have posted the message, 0 for any
+     * @return the deleted message, or an empty message if there was none
      */
-    public void remove(int id) {
-        String sql = "DELETE FROM message WHERE message_id = ?;";
-        try{
+    @Override
+    public Message remove(int id, int posted_by) {
+        long start = System.nanoTime();
+        String sql = posted_by > 0
+            ? "SELECT " + MESSAGE_COLUMNS +
+                " FROM OLD TABLE (DELETE FROM message WHERE message_id = ? AND posted_by = ?);"
+            : "SELECT " + MESSAGE_COLUMNS + " FROM OLD TABLE (DELETE FROM message WHERE message_id = ?);";
+        Message message = new Message();
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
             PreparedStatement pstmt = conn.prepareStatement(sql);
             pstmt.setInt(1, id);
-            pstmt.executeUpdate();
+            if (posted_by > 0) {
+                pstmt.setInt(2, posted_by);
+            }
+            Message removed = RowMapper.first(pstmt, MESSAGE);
+            if (removed != null) {
+                message = removed;
+                searchIndex.remove(id);
+                version.incrementAndGet();
+            }
+            pstmt.close();
+        } catch(SQLException e) {
+            e.printStackTrace();
+        }
+        REMOVE_TIMER.recordSince(start);
+        return message;
+    }
+
+    /**
+     * To update the text of the message with the given id if the given account posted it, in one statement
+     * @param id the message_id
+     * @param message_text the new message text
+     * @param posted_by the account that must have posted the message, 0 for any
+     * @return the message as updated, or an empty message if there was none
+     */
+    @Override
+    public Message updateText(int id, String message_text, int posted_by) {
+        long start = System.nanoTime();
+        String sql = posted_by > 0
+            ? "SELECT " + MESSAGE_COLUMNS +
+                " FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ? AND posted_by = ?);"
+            : "SELECT " + MESSAGE_COLUMNS +
+                " FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?);";
+        Message message = new Message();
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            PreparedStatement pstmt = conn.prepareStatement(sql);
+            pstmt.setString(1, message_text);
+            pstmt.setInt(2, id);
+            if (posted_by > 0) {
+                pstmt.setInt(3, posted_by);
+            }
+            Message updated = RowMapper.first(pstmt, MESSAGE);
+            if (updated != null) {
+                message = updated;
+                searchIndex.add(id, message.getMessage_text());
+                version.incrementAndGet();
+            }
             pstmt.close();
         } catch(SQLException e) {
             e.printStackTrace();
         }
+        UPDATE_TEXT_TIMER.recordSince(start);
+        return message;
+    }
+
+    /**
+     * To search message text with the in-memory index; no database call is made.
+     * @param query terms that must all appear, with OR between alternatives
+     * @param offset the number of top ranked matches to skip
+     * @param limit the maximum number of ids to return
+     * @return the ids of the matching messages in rank order, and the total number of matches
+     */
+    @Override
+    public MessageSearchIndex.SearchResult search(String query, int offset, int limit) {
+        long start = System.nanoTime();
+        MessageSearchIndex.SearchResult result = searchIndex.search(query, offset, limit);
+        SEARCH_TIMER.recordSince(start);
+        return result;
     }
 
     /**
-     * To update the message text of the given message.
-     * @param message the message to be updated.
+     * To get the ids of the newest messages posted by any of the given accounts, with one query
+     * @param posters the account ids of the posters
+     * @param limit the maximum number of ids to return
+     * @return the ids of the newest messages, in ascending order
      */
-    public void update(Message message) {
-        String sql = "UPDATE message SET message_text = ? WHERE message_id = ?;";
-        try{
+    @Override
+    public int[] getNewestIdsByPosters(int[] posters, int limit) {
+        if (posters.length == 0) {
+            return new int[0];
+        }
+        long start = System.nanoTime();
+        // one array parameter rather than an IN list, so every call shares one cached statement
+        String sql = "SELECT message_id FROM message WHERE posted_by = ANY(?) ORDER BY message_id DESC LIMIT ?;";
+        int[] ids = new int[0];
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
             PreparedStatement pstmt = conn.prepareStatement(sql);
-            pstmt.setString(1, message.getMessage_text());
-            pstmt.setInt(2, message.getMessage_id());
-            pstmt.executeUpdate();
+            pstmt.setObject(1, Arrays.stream(posters).boxed().toArray(Integer[]::new));
+            pstmt.setInt(2, limit);
+            int[] newest = new int[limit];
+            int count = 0;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    newest[count++] = rs.getInt(1);
+                }
+            }
+            ids = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = newest[count - 1 - i];
+            }
             pstmt.close();
         } catch(SQLException e) {
             e.printStackTrace();
         }
+        GET_NEWEST_IDS_BY_POSTERS_TIMER.recordSince(start);
+        return ids;
+    }
+
+    /**
+     * To get several messages by id with one query
+     * @param ids the message_ids
+     * @return the messages that exist, in the order of the ids given
+     */
+    @Override
+    public List<Message> getMessagesByIds(int[] ids) {
+        List<Message> messages = new ArrayList<>();
+        if (ids.length == 0) {
+            return messages;
+        }
+        long start = System.nanoTime();
+        String sql = "SELECT " + MESSAGE_COLUMNS + " FROM message WHERE message_id = ANY(?);";
+        Map<Integer, Message> found = new HashMap<>();
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+            PreparedStatement pstmt = conn.prepareStatement(sql);
+            pstmt.setObject(1, Arrays.stream(ids).boxed().toArray(Integer[]::new));
+            RowMapper.forEach(pstmt, MESSAGE, message -> found.put(message.getMessage_id(), message));
+            pstmt.close();
+        } catch(SQLException e) {
+            e.printStackTrace();
+        }
+        for (int id : ids) {
+            Message message = found.get(id);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        GET_MESSAGES_BY_IDS_TIMER.recordSince(start);
+        return messages;
     }
 
     /**
      * @param posted_by The account_id of the messages poster.
      * @return a list of all messages posted by the user if any
      */
+    @Override
     public List<Message> getMessagesByUser(int posted_by) {
-        String sql = "SELECT * FROM message WHERE posted_by = ?;";
+        long start = System.nanoTime();
+        String sql = "SELECT " + MESSAGE_COLUMNS + " FROM message WHERE posted_by = ?;";
         List<Message> messages = new ArrayList<>();
-        try{
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
            PreparedStatement pstmt = conn.prepareStatement(sql);
            pstmt.setInt(1, posted_by);
-           ResultSet rs = pstmt.executeQuery();
-
-           while(rs.next()) {
-            Message message = new Message(rs.getInt("message_id"),
-                                rs.getInt("posted_by"),
-                                rs.getString("message_text"),
-                                rs.getLong("time_posted_epoch"));
-            messages.add(message);
+           messages = RowMapper.list(pstmt, MESSAGE);
+           pstmt.close();
+        } catch(SQLException e) {
+            e.printStackTrace();
+        }
+        GET_MESSAGES_BY_USER_TIMER.recordSince(start);
+        return messages;
+    }
+
+    /**
+     * To get one page of an account's messages, newest first. The query walks the
+     * (posted_by, time_posted_epoch, message_id) index in order and stops after the page, so its cost depends on
+     * the page size and not on how many messages the account has posted.
+     * @param posted_by The account_id of the messages poster.
+     * @param before the time_posted_epoch and message_id of the last message on the previous page, null for the
+     * first page
+     * @param limit the maximum number of messages to return
+     * @return the messages on the page, newest first
+     */
+    @Override
+    public List<Message> getTimelinePage(int posted_by, long[] before, int limit) {
+        long start = System.nanoTime();
+        String sql = before == null
+            ? "SELECT " + MESSAGE_COLUMNS + " FROM message USE INDEX (message_posted_by_time_idx) " +
+                "WHERE posted_by = ? " +
+                "ORDER BY posted_by, time_posted_epoch DESC, message_id DESC LIMIT ?;"
+            : "SELECT " + MESSAGE_COLUMNS + " FROM message USE INDEX (message_posted_by_time_idx) " +
+                "WHERE posted_by = ? " +
+                "AND time_posted_epoch <= ? AND (time_posted_epoch < ? OR message_id < ?) " +
+                "ORDER BY posted_by, time_posted_epoch DESC, message_id DESC LIMIT ?;";
+        List<Message> messages = new ArrayList<>();
+        try (Connection conn = ConnectionUtil.borrowConnection()) {
+           PreparedStatement pstmt = conn.prepareStatement(sql);
+           int i = 1;
+           pstmt.setInt(i++, posted_by);
+           if (before != null) {
+               pstmt.setLong(i++, before[0]);
+               pstmt.setLong(i++, before[0]);
+               pstmt.setLong(i++, before[1]);
            }
+           pstmt.setInt(i, limit);
+           messages = RowMapper.list(pstmt, MESSAGE);
            pstmt.close();
         } catch(SQLException e) {
             e.printStackTrace();
         }
+        GET_TIMELINE_PAGE_TIMER.recordSince(start);
         return messages;
     }
 }
@@ -0,0 +1,680 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import Model.Message;
+import Util.ConcurrentIdSet;
+import Util.Metrics;
+
+/**
+ * Messages kept in an append-only log of memory-mapped segment files, for write-heavy deployments: a save is a copy
+ * into mapped memory instead of an H2 insert.
+ *
+ * Each segment starts with a 16 byte header (magic, format version, the id sequence when the segment was created)
+ * followed by records of the form [int payload length][int CRC32 of payload][payload]. A payload is a type byte and
+ * a message_id, followed for a message by posted_by, time_posted_epoch and the UTF-8 text. An edit appends the
+ * message again and a delete appends a tombstone; the record a message_id last pointed at becomes garbage.
+ *
+ * The message_id to record position index lives on the heap and is rebuilt at startup by reading every segment
+ * from start to end, stopping at the first record whose length or checksum is wrong, which is where a crash cut the
+ * last write short. Reads go through the index to the mapped segment without a lock; writes are appended by one
+ * writer at a time. A background task forces the active segment to disk every storage.log.flushMillis, so a crash of
+ * the machine (not of the process) loses at most that much, and compacts sealed segments whose live records have
+ * fallen below storage.log.compactionThreshold of their size by copying those records to the end of the log and
+ * deleting the segment. Tombstones are carried along as long as an older segment could still hold the message.
+ */
+public class MessageLogStore extends IndexedMessageStore {
+    private static final int MAGIC = 0x4D4C4F47;
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    /**
+     * The payload of a message before its text: type, message_id, posted_by and time_posted_epoch.
+     */
+    private static final int PUT_FIXED_BYTES = 1 + 4 + 4 + 8;
+    private static final int DELETE_BYTES = 1 + 4;
+    private static final int MIN_SEGMENT_BYTES = 64 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final double compactionThreshold;
+    private final FileChannel lockChannel;
+    private final FileLock dirLock;
+    /**
+     * Every segment by number, oldest first. The last one is the active segment records are appended to.
+     */
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    /**
+     * Serializes appends, index updates and compaction.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ScheduledExecutorService maintenance;
+    private final LongAdder compactions;
+    private final LongAdder reclaimedBytes;
+    /**
+     * The position of the record each message_id points at, 0 if it has none: the segment number in the high 32
+     * bits and the offset in the low 32. Replaced by a larger copy under the write lock when an id outgrows it.
+     */
+    private volatile AtomicLongArray positions = new AtomicLongArray(1024);
+    /**
+     * The message_ids that have a position, so walks in id order skip deleted ranges instead of probing each id.
+     */
+    private final ConcurrentIdSet live = new ConcurrentIdSet();
+    /**
+     * The highest message_id handed out, written under the write lock.
+     */
+    private volatile int sequence;
+    private volatile Segment active;
+    private volatile boolean closed;
+
+    /**
+     * @param dir the directory the segment files are kept in, created if it does not exist
+     * @param segmentBytes the size of each segment file
+     * @param compactionThreshold sealed segments with less than this fraction of live data are compacted
+     * @param flushMillis how often the active segment is forced to disk, 0 to only force when a segment fills up
+     * @param compactionMillis how often sealed segments are checked for compaction, 0 never to compact
+     */
+    public MessageLogStore(Path dir, int segmentBytes, double compactionThreshold, long flushMillis,
+            long compactionMillis) {
+        this.dir = dir;
+        this.segmentBytes = Math.max(MIN_SEGMENT_BYTES, segmentBytes);
+        this.compactionThreshold = compactionThreshold;
+        try {
+            Files.createDirectories(dir);
+            lockChannel = FileChannel.open(dir.resolve("LOCK"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("Message log " + dir + " is already open");
+            }
+            dirLock = lock;
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open message log " + dir, e);
+        }
+        this.compactions = Metrics.counter("message_log_compactions_total", "Message log segments compacted", "");
+        this.reclaimedBytes = Metrics.counter("message_log_reclaimed_bytes_total",
+            "Bytes of message log segments deleted by compaction", "");
+        Metrics.register("message_log_segments", "Message log segment files", "gauge", "", segments::size);
+        Metrics.register("message_log_bytes", "Bytes written to message log segments", "gauge", "",
+            this::usedBytes);
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "message-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (flushMillis > 0) {
+            maintenance.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        }
+        if (compactionMillis > 0) {
+            maintenance.scheduleWithFixedDelay(this::compact, compactionMillis, compactionMillis,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return a log configured by storage.log.dir, .segmentBytes, .compactionThreshold, .flushMillis and
+     * .compactionMillis
+     */
+    public static MessageLogStore configured() {
+        return new MessageLogStore(Paths.get(System.getProperty("storage.log.dir", "message-log")),
+            Integer.getInteger("storage.log.segmentBytes", 64 * 1024 * 1024),
+            Double.parseDouble(System.getProperty("storage.log.compactionThreshold", "0.5")),
+            Long.getLong("storage.log.flushMillis", 1000), Long.getLong("storage.log.compactionMillis", 30000));
+    }
+
+    @Override
+    public Message save(Message message) {
+        writeLock.lock();
+        try {
+            append(message);
+            changed();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            writeLock.unlock();
+        }
+        return message;
+    }
+
+    /**
+     * The batch is appended under one acquisition of the write lock. Should a segment fail to roll over part way,
+     * the messages already appended are taken out of the index and their records cut off the log again, without
+     * appending anything, so either all are saved or none are.
+     */
+    @Override
+    public List<Message> saveAll(List<Message> batch) {
+        writeLock.lock();
+        try {
+            Segment first = active;
+            int firstEnd = first.end;
+            long firstLiveBytes = first.liveBytes;
+            int firstSequence = sequence;
+            int saved = 0;
+            try {
+                for (Message message : batch) {
+                    append(message);
+                    saved++;
+                }
+                changed();
+            } catch (IOException e) {
+                e.printStackTrace();
+                for (int i = 0; i < saved; i++) {
+                    Message message = batch.get(i);
+                    setPosition(message.getMessage_id(), 0);
+                    unindexed(message);
+                    message.setMessage_id(0);
+                }
+                sequence = firstSequence;
+                truncate(first, firstEnd, firstLiveBytes);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return batch;
+    }
+
+    @Override
+    public Message remove(int id, int posted_by) {
+        writeLock.lock();
+        try {
+            Message removed = removeLocked(id, posted_by);
+            if (removed.getMessage_id() != 0) {
+                changed();
+            }
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Message updateText(int id, String message_text, int posted_by) {
+        writeLock.lock();
+        try {
+            long position = positionOf(id);
+            Message message = position == 0 ? null : read(position);
+            if (message == null || (posted_by > 0 && message.getPosted_by() != posted_by)) {
+                return new Message();
+            }
+            message.setMessage_text(message_text);
+            long updated = appendRecord(putPayload(message));
+            release(position);
+            setPosition(id, updated);
+            textChanged(id, message_text);
+            changed();
+            return message;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new Message();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    Message load(int id) {
+        long position = positionOf(id);
+        while (position != 0) {
+            Message message = read(position);
+            if (message != null) {
+                return message;
+            }
+            // the segment was compacted away after the position was read; the index has the new one
+            long moved = positionOf(id);
+            if (moved == position) {
+                return null;
+            }
+            position = moved;
+        }
+        return null;
+    }
+
+    @Override
+    int nextId(int after) {
+        return live.nextId(Math.max(after, 0));
+    }
+
+    /**
+     * Forces every write so far to disk and releases the segment files and the directory lock. The store cannot be
+     * used afterwards.
+     */
+    @Override
+    public void close() {
+        maintenance.shutdown();
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+            dirLock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * To compact every sealed segment whose live records have fallen below the threshold. Public so it can be run
+     * on demand as well as in the background.
+     */
+    public void compact() {
+        for (Integer number : new ArrayList<>(segments.keySet())) {
+            writeLock.lock();
+            try {
+                Segment segment = segments.get(number);
+                if (closed || segment == null || segment == active) {
+                    continue;
+                }
+                long written = segment.end - SEGMENT_HEADER_BYTES;
+                if (segment.liveBytes < compactionThreshold * written) {
+                    rewrite(segment);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gives the message the next id and appends it. Called with the write lock held.
+     */
+    private void append(Message message) throws IOException {
+        int id = sequence + 1;
+        message.setMessage_id(id);
+        long position;
+        try {
+            position = appendRecord(putPayload(message));
+        } catch (IOException e) {
+            message.setMessage_id(0);
+            throw e;
+        }
+        sequence = id;
+        setPosition(id, position);
+        indexed(copy(message));
+    }
+
+    /**
+     * Appends a tombstone for the message if it exists and was posted by the given account. Called with the write
+     * lock held.
+     */
+    private Message removeLocked(int id, int posted_by) {
+        long position = positionOf(id);
+        Message message = position == 0 ? null : read(position);
+        if (message == null || (posted_by > 0 && message.getPosted_by() != posted_by)) {
+            return new Message();
+        }
+        try {
+            appendRecord(ByteBuffer.allocate(DELETE_BYTES).put(DELETE).putInt(id).array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new Message();
+        }
+        release(position);
+        setPosition(id, 0);
+        unindexed(message);
+        return message;
+    }
+
+    /**
+     * Cuts the log back to where it ended when the given segment was active: deletes the segments opened since,
+     * zeroes the records appended to it after the given end and makes it the active segment again. Nothing may
+     * point at the records cut off. Called with the write lock held.
+     */
+    private void truncate(Segment segment, int end, long liveBytes) {
+        for (Segment later : new ArrayList<>(segments.tailMap(segment.number, false).values())) {
+            segments.remove(later.number);
+            try {
+                later.channel.close();
+                Files.deleteIfExists(later.path);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        ByteBuffer records = segment.buffer.duplicate();
+        for (int i = end; i < segment.end; i++) {
+            records.put(i, (byte) 0);
+        }
+        segment.end = end;
+        segment.liveBytes = liveBytes;
+        active = segment;
+        segment.buffer.force();
+    }
+
+    /**
+     * Copies the live records of a sealed segment, and the tombstones an older segment may still need, to the end
+     * of the log, forces them to disk and deletes the segment. Called with the write lock held.
+     */
+    private void rewrite(Segment segment) throws IOException {
+        boolean olderSegments = segments.firstKey() < segment.number;
+        ByteBuffer records = segment.buffer.duplicate();
+        int offset = SEGMENT_HEADER_BYTES;
+        while (offset < segment.end) {
+            int length = records.getInt(offset);
+            byte type = records.get(offset + RECORD_HEADER_BYTES);
+            int id = records.getInt(offset + RECORD_HEADER_BYTES + 1);
+            long position = position(segment.number, offset);
+            if ((type == PUT && positionOf(id) == position) || (type == DELETE && olderSegments)) {
+                byte[] payload = new byte[length];
+                records.position(offset + RECORD_HEADER_BYTES);
+                records.get(payload);
+                long moved = appendRecord(payload);
+                if (type == PUT) {
+                    setPosition(id, moved);
+                }
+            }
+            offset += RECORD_HEADER_BYTES + length;
+        }
+        active.buffer.force();
+        segments.remove(segment.number);
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+        compactions.increment();
+        reclaimedBytes.add(segment.end);
+    }
+
+    /**
+     * Appends one record to the active segment, moving on to a new segment if it does not fit. Called with the
+     * write lock held.
+     * @return the position of the record
+     */
+    private long appendRecord(byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("Message log " + dir + " has been closed");
+        }
+        int size = RECORD_HEADER_BYTES + payload.length;
+        if (active.end + size > active.buffer.capacity()) {
+            if (SEGMENT_HEADER_BYTES + size > segmentBytes) {
+                throw new IOException("Record of " + size + " bytes does not fit in a segment");
+            }
+            active.buffer.force();
+            active = openSegment(active.number + 1, true);
+        }
+        int offset = active.end;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = active.buffer.duplicate();
+        buffer.position(offset + RECORD_HEADER_BYTES);
+        buffer.put(payload);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.putInt(offset, payload.length);
+        active.end = offset + size;
+        if (payload[0] == PUT) {
+            active.liveBytes += size;
+        }
+        return position(active.number, offset);
+    }
+
+    /**
+     * @param position the position of a message record
+     * @return the message, or null if its segment no longer exists or the record was cut off by a failed batch
+     */
+    private Message read(long position) {
+        Segment segment = segments.get((int) (position >>> 32));
+        if (segment == null) {
+            return null;
+        }
+        ByteBuffer record = segment.buffer.duplicate();
+        int offset = (int) position;
+        int length = record.getInt(offset);
+        if (length < PUT_FIXED_BYTES) {
+            return null;
+        }
+        record.position(offset + RECORD_HEADER_BYTES + 1);
+        int id = record.getInt();
+        int postedBy = record.getInt();
+        long time = record.getLong();
+        byte[] text = new byte[length - PUT_FIXED_BYTES];
+        record.get(text);
+        return new Message(id, postedBy, new String(text, StandardCharsets.UTF_8), time);
+    }
+
+    /**
+     * To stop counting the record at the position as live, when the message_id moves off it. Called with the write
+     * lock held.
+     */
+    private void release(long position) {
+        Segment segment = segments.get((int) (position >>> 32));
+        if (segment != null) {
+            segment.liveBytes -= RECORD_HEADER_BYTES + segment.buffer.getInt((int) position);
+        }
+    }
+
+    private static byte[] putPayload(Message message) {
+        byte[] text = message.getMessage_text() == null ? new byte[0]
+            : message.getMessage_text().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(PUT_FIXED_BYTES + text.length).put(PUT).putInt(message.getMessage_id())
+            .putInt(message.getPosted_by()).putLong(message.getTime_posted_epoch()).put(text).array();
+    }
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private long positionOf(int id) {
+        AtomicLongArray index = positions;
+        return id > 0 && id < index.length() ? index.get(id) : 0;
+    }
+
+    /**
+     * Called with the write lock held.
+     */
+    private void setPosition(int id, long position) {
+        AtomicLongArray index = positions;
+        if (id >= index.length()) {
+            AtomicLongArray grown = new AtomicLongArray(Math.max(id + 1, index.length() * 2));
+            for (int i = 0; i < index.length(); i++) {
+                grown.set(i, index.get(i));
+            }
+            positions = grown;
+            index = grown;
+        }
+        index.set(id, position);
+        if (position != 0) {
+            live.add(id);
+        } else {
+            live.remove(id);
+        }
+    }
+
+    /**
+     * Opens the existing segments in order, rebuilding the index with one sequential pass over each, then indexes
+     * the messages that are still live and picks the segment to append to.
+     */
+    private void recover() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        numbers.sort(null);
+        for (int i = 0; i < numbers.size(); i++) {
+            scan(openSegment(numbers.get(i), false, i == numbers.size() - 1));
+        }
+        for (int id = nextId(0); id > 0; id = nextId(id)) {
+            Message message = read(positionOf(id));
+            if (message != null) {
+                indexed(message);
+            }
+        }
+        active = segments.isEmpty() ? openSegment(1, true) : segments.lastEntry().getValue();
+    }
+
+    /**
+     * Replays the records of one segment into the index, and zeroes a torn record at its end so later appends
+     * are not followed by its remains.
+     */
+    private void scan(Segment segment) {
+        ByteBuffer records = segment.buffer.duplicate();
+        int offset = SEGMENT_HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        while (offset + RECORD_HEADER_BYTES <= records.capacity()) {
+            int length = records.getInt(offset);
+            if (length < DELETE_BYTES || offset + RECORD_HEADER_BYTES + length > records.capacity()) {
+                break;
+            }
+            ByteBuffer payload = records.duplicate();
+            payload.position(offset + RECORD_HEADER_BYTES).limit(offset + RECORD_HEADER_BYTES + length);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != records.getInt(offset + 4)) {
+                break;
+            }
+            byte type = records.get(offset + RECORD_HEADER_BYTES);
+            int id = records.getInt(offset + RECORD_HEADER_BYTES + 1);
+            long previous = positionOf(id);
+            if (previous != 0) {
+                release(previous);
+            }
+            if (type == PUT) {
+                setPosition(id, position(segment.number, offset));
+                segment.liveBytes += RECORD_HEADER_BYTES + length;
+            } else {
+                setPosition(id, 0);
+            }
+            sequence = Math.max(sequence, id);
+            offset += RECORD_HEADER_BYTES + length;
+        }
+        segment.end = offset;
+        int tornEnd = Math.min(records.capacity(), offset + RECORD_HEADER_BYTES
+            + Math.max(0, offset + 4 <= records.capacity() ? records.getInt(offset) : 0));
+        for (int i = offset; i < tornEnd; i++) {
+            records.put(i, (byte) 0);
+        }
+    }
+
+    /**
+     * @param number the segment number
+     * @param create true to create a new segment, false to open an existing one
+     */
+    private Segment openSegment(int number, boolean create) throws IOException {
+        return openSegment(number, create, false);
+    }
+
+    /**
+     * The header of a new segment is forced to disk before any record is appended to it. A crash while the segment
+     * was being created can still leave the last one short or with a zeroed header; that segment holds nothing yet,
+     * so it is set up again as an empty one rather than refusing to open the log.
+     * @param number the segment number
+     * @param create true to create a new segment, false to open an existing one
+     * @param last true if an existing segment is the last one, so a blank header is set up again
+     */
+    private Segment openSegment(int number, boolean create, boolean last) throws IOException {
+        Path path = dir.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        FileChannel channel = create
+            ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = create ? segmentBytes : channel.size();
+        boolean blank = !create && last && size < SEGMENT_HEADER_BYTES;
+        if (blank) {
+            size = segmentBytes;
+        }
+        if (size < SEGMENT_HEADER_BYTES || size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Message log segment " + path + " has an invalid size of " + size);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (!create && last && buffer.getInt(0) == 0 && buffer.getInt(4) == 0) {
+            blank = true;
+        }
+        if (create || blank) {
+            buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(8, sequence);
+            buffer.force();
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            channel.close();
+            throw new IOException(path + " is not a message log segment");
+        } else {
+            sequence = Math.max(sequence, buffer.getInt(8));
+        }
+        Segment segment = new Segment(number, path, channel, buffer);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    /**
+     * Forces the active segment without taking the write lock, so appends carry on while the disk catches up.
+     */
+    private void flush() {
+        Segment current = active;
+        if (!closed) {
+            current.buffer.force();
+        }
+    }
+
+    private long usedBytes() {
+        long used = 0;
+        for (Map.Entry<Integer, Segment> entry : segments.entrySet()) {
+            used += entry.getValue().end;
+        }
+        return used;
+    }
+
+    /**
+     * One segment file and its mapping. end and liveBytes are written under the write lock.
+     */
+    private static final class Segment {
+        final int number;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        /**
+         * The offset just past the last record.
+         */
+        volatile int end = SEGMENT_HEADER_BYTES;
+        /**
+         * The bytes of the records message_ids still point at.
+         */
+        long liveBytes;
+
+        Segment(int number, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
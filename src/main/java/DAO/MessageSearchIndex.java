@@ -0,0 +1,437 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory inverted index over message text. Each term maps to a postings list of the ids of the messages
+ * that contain it, kept as sorted primitive int arrays with a parallel array of term frequencies, so AND is a
+ * merge of sorted arrays and no id is ever boxed on the query path.
+ *
+ * Text is split into lower-cased runs of letters and digits. A query is a list of terms that must all appear,
+ * and OR between terms starts an alternative: "cat dog OR bird" matches messages containing both cat and dog, or
+ * bird. Matches are ranked with BM25, newest first among equal scores.
+ */
+public class MessageSearchIndex {
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final Map<Integer, Doc> docs = new HashMap<>();
+    private long totalLength;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * To index the text of a message, replacing whatever was indexed for it before
+     * @param id the message_id
+     * @param text the message text
+     */
+    public void add(int id, String text) {
+        Map<String, Integer> counts = count(text);
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            Postings[] postings = new Postings[counts.size()];
+            int length = 0;
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                Postings list = terms.computeIfAbsent(entry.getKey(), Postings::new);
+                list.add(id, entry.getValue());
+                postings[i++] = list;
+                length += entry.getValue();
+            }
+            docs.put(id, new Doc(postings, length));
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id the message_id of a message that no longer exists
+     */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * To add everything in another index to this one. Used to combine indexes built in parallel over disjoint
+     * ranges of ids, which is cheap because every postings list is extended at its end.
+     * @param later an index whose ids are all greater than any id in this one
+     */
+    public void append(MessageSearchIndex later) {
+        lock.writeLock().lock();
+        try {
+            for (Postings theirs : later.terms.values()) {
+                terms.computeIfAbsent(theirs.term, Postings::new).appendAll(theirs);
+            }
+            for (Map.Entry<Integer, Doc> entry : later.docs.entrySet()) {
+                Doc doc = entry.getValue();
+                Postings[] postings = new Postings[doc.postings.length];
+                for (int i = 0; i < postings.length; i++) {
+                    postings[i] = terms.get(doc.postings[i].term);
+                }
+                docs.put(entry.getKey(), new Doc(postings, doc.length));
+            }
+            totalLength += later.totalLength;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * To find and rank the messages matching a query
+     * @param query the query, terms separated by spaces with OR between alternatives
+     * @param offset the number of top ranked matches to skip
+     * @param limit the maximum number of ids to return
+     * @return the ids of the matches in rank order, from offset on, and the total number of matches
+     */
+    public SearchResult search(String query, int offset, int limit) {
+        List<List<String>> alternatives = parse(query);
+        lock.readLock().lock();
+        try {
+            int[] matches = new int[0];
+            for (List<String> alternative : alternatives) {
+                matches = union(matches, intersect(alternative));
+            }
+            if (matches.length == 0 || offset >= matches.length) {
+                return new SearchResult(new int[0], matches.length);
+            }
+            double[] scores = score(matches, alternatives);
+            // Positive floats sort like their bit patterns, so score and id pack into one comparable long. Only
+            // the top offset + limit are kept, in a min-heap whose root is the weakest of them.
+            int keep = (int) Math.min((long) offset + limit, matches.length);
+            long[] heap = new long[keep];
+            int size = 0;
+            for (int i = 0; i < matches.length && keep > 0; i++) {
+                long ranked = ((long) Float.floatToIntBits((float) scores[i]) << 32) | matches[i];
+                if (size < keep) {
+                    heap[size] = ranked;
+                    siftUp(heap, size++);
+                } else if (ranked > heap[0]) {
+                    heap[0] = ranked;
+                    siftDown(heap, size);
+                }
+            }
+            Arrays.sort(heap, 0, size);
+            int count = Math.max(0, size - offset);
+            int[] ids = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = (int) heap[size - 1 - offset - i];
+            }
+            return new SearchResult(ids, matches.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of messages in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct terms in the index
+     */
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param text message text or a query
+     * @return the terms of the text, in order, lower-cased
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean termChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                if (i - start <= MAX_TERM_LENGTH) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static Map<String, Integer> count(String text) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String token : tokenize(text)) {
+            counts.merge(token, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * @param query the raw query
+     * @return the alternatives of the query, each the terms that must all match
+     */
+    private static List<List<String>> parse(String query) {
+        List<List<String>> alternatives = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.equals("OR")) {
+                if (!current.isEmpty()) {
+                    alternatives.add(current);
+                }
+                current = new ArrayList<>();
+            } else if (!word.equals("AND")) {
+                current.addAll(tokenize(word));
+            }
+        }
+        if (!current.isEmpty()) {
+            alternatives.add(current);
+        }
+        return alternatives;
+    }
+
+    private void removeLocked(int id) {
+        Doc doc = docs.remove(id);
+        if (doc == null) {
+            return;
+        }
+        for (Postings postings : doc.postings) {
+            postings.remove(id);
+            if (postings.size == 0) {
+                terms.remove(postings.term);
+            }
+        }
+        totalLength -= doc.length;
+    }
+
+    /**
+     * @param required terms that must all appear
+     * @return the sorted ids of the messages containing every term
+     */
+    private int[] intersect(List<String> required) {
+        Postings[] lists = new Postings[required.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = terms.get(required.get(i));
+            if (lists[i] == null) {
+                return new int[0];
+            }
+        }
+        // Starting from the rarest term keeps every later step no larger than its result
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int size = result.length;
+        for (int i = 1; i < lists.length && size > 0; i++) {
+            int kept = 0;
+            for (int j = 0; j < size; j++) {
+                if (lists[i].indexOf(result[j]) >= 0) {
+                    result[kept++] = result[j];
+                }
+            }
+            size = kept;
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        long value = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        long value = heap[0];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (value <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = value;
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[size++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[size++] = b[j++];
+            } else {
+                result[size++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @return the BM25 score of each match against every distinct term of the query
+     */
+    private double[] score(int[] matches, List<List<String>> alternatives) {
+        Set<String> queryTerms = new LinkedHashSet<>();
+        for (List<String> alternative : alternatives) {
+            queryTerms.addAll(alternative);
+        }
+        double averageLength = docs.isEmpty() ? 1 : (double) totalLength / docs.size();
+        double[] norms = new double[matches.length];
+        for (int i = 0; i < matches.length; i++) {
+            norms[i] = K1 * (1 - B + B * docs.get(matches[i]).length / averageLength);
+        }
+        double[] scores = new double[matches.length];
+        for (String term : queryTerms) {
+            Postings postings = terms.get(term);
+            if (postings == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (docs.size() - postings.size + 0.5) / (postings.size + 0.5));
+            for (int i = 0; i < matches.length; i++) {
+                int position = postings.indexOf(matches[i]);
+                if (position >= 0) {
+                    int tf = postings.freqs[position];
+                    scores[i] += idf * tf * (K1 + 1) / (tf + norms[i]);
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * The ids of a page of ranked matches and how many matches there were in all.
+     */
+    public static final class SearchResult {
+        public final int[] ids;
+        public final int total;
+
+        SearchResult(int[] ids, int total) {
+            this.ids = ids;
+            this.total = total;
+        }
+    }
+
+    /**
+     * The messages containing one term, as sorted ids with the number of times the term occurs in each.
+     */
+    private static final class Postings {
+        final String term;
+        int[] ids = new int[4];
+        int[] freqs = new int[4];
+        int size;
+
+        Postings(String term) {
+            this.term = term;
+        }
+
+        int indexOf(int id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+
+        void add(int id, int freq) {
+            int position = size;
+            if (size > 0 && ids[size - 1] >= id) {
+                position = indexOf(id);
+                if (position >= 0) {
+                    freqs[position] = freq;
+                    return;
+                }
+                position = -position - 1;
+            }
+            ensureCapacity(size + 1);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            System.arraycopy(freqs, position, freqs, position + 1, size - position);
+            ids[position] = id;
+            freqs[position] = freq;
+            size++;
+        }
+
+        void remove(int id) {
+            int position = indexOf(id);
+            if (position < 0) {
+                return;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            System.arraycopy(freqs, position + 1, freqs, position, size - position - 1);
+            size--;
+        }
+
+        void appendAll(Postings later) {
+            ensureCapacity(size + later.size);
+            System.arraycopy(later.ids, 0, ids, size, later.size);
+            System.arraycopy(later.freqs, 0, freqs, size, later.size);
+            size += later.size;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > ids.length) {
+                int length = Math.max(capacity, ids.length + (ids.length >> 1));
+                ids = Arrays.copyOf(ids, length);
+                freqs = Arrays.copyOf(freqs, length);
+            }
+        }
+    }
+
+    /**
+     * What the index holds for one message: the postings lists it appears in and its length in terms.
+     */
+    private static final class Doc {
+        final Postings[] postings;
+        final int length;
+
+        Doc(Postings[] postings, int length) {
+            this.postings = postings;
+            this.length = length;
+        }
+    }
+}
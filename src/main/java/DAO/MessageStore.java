@@ -0,0 +1,139 @@
+package DAO;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import Model.Message;
+
+/**
+ * Where messages are kept. MessageDao keeps them in the database, InMemoryMessageStore on the heap only and
+ * MessageLogStore in a memory-mapped log. The storage.engine property chooses between them at startup, see
+ * {@link StorageEngine}.
+ */
+public interface MessageStore {
+    /**
+     * @return a value that moves on after every change to the stored messages
+     */
+    long getVersion();
+
+    /**
+     * @param message the message to be persisted
+     * @return the message with its generated message_id
+     */
+    Message save(Message message);
+
+    /**
+     * To persist several messages at once. Either every message is saved or none are.
+     * @param messages the messages to be persisted
+     * @return the same messages with their generated message_id, or with message_id 0 if they could not be saved
+     */
+    List<Message> saveAll(List<Message> messages);
+
+    /**
+     * @return every message, or an empty list if there are none
+     */
+    List<Message> getAll();
+
+    /**
+     * To hand every message to the consumer one at a time, without building a list.
+     * @param consumer receives each message in message_id order
+     * @throws IllegalStateException if the messages could not all be read, after some may have been handed out
+     */
+    void forEach(Consumer<Message> consumer);
+
+    /**
+     * @param posted_by The account_id of the messages poster.
+     * @param consumer receives each message in message_id order
+     * @throws IllegalStateException if the messages could not all be read, after some may have been handed out
+     */
+    void forEachByUser(int posted_by, Consumer<Message> consumer);
+
+    /**
+     * @param afterId only messages with a greater message_id are returned, 0 to start from the beginning
+     * @param limit the maximum number of messages to return
+     * @return the messages on the page, in ascending message_id order
+     */
+    List<Message> getPage(int afterId, int limit);
+
+    /**
+     * @param id the id of the message to be retrieved
+     * @return the message if it exists, an empty message object otherwise
+     */
+    Message getMessageById(int id);
+
+    /**
+     * @param id the message_id
+     * @return the deleted message, or an empty message if there was none
+     */
+    default Message remove(int id) {
+        return remove(id, 0);
+    }
+
+    /**
+     * @param id the message_id
+     * @param posted_by the account that must have posted the message, 0 for any
+     * @return the deleted message, or an empty message if there was none
+     */
+    Message remove(int id, int posted_by);
+
+    /**
+     * @param id the message_id
+     * @param message_text the new message text
+     * @return the message as updated, or an empty message if there was none
+     */
+    default Message updateText(int id, String message_text) {
+        return updateText(id, message_text, 0);
+    }
+
+    /**
+     * @param id the message_id
+     * @param message_text the new message text
+     * @param posted_by the account that must have posted the message, 0 for any
+     * @return the message as updated, or an empty message if there was none
+     */
+    Message updateText(int id, String message_text, int posted_by);
+
+    /**
+     * @param query terms that must all appear, with OR between alternatives
+     * @param offset the number of top ranked matches to skip
+     * @param limit the maximum number of ids to return
+     * @return the ids of the matching messages in rank order, and the total number of matches
+     */
+    MessageSearchIndex.SearchResult search(String query, int offset, int limit);
+
+    /**
+     * @param posters the account ids of the posters
+     * @param limit the maximum number of ids to return
+     * @return the ids of the newest messages posted by any of them, in ascending order
+     */
+    int[] getNewestIdsByPosters(int[] posters, int limit);
+
+    /**
+     * @param ids the message ids
+     * @return the messages that exist, in the order of the ids given
+     */
+    List<Message> getMessagesByIds(int[] ids);
+
+    /**
+     * @param posted_by The account_id of the messages poster.
+     * @return every message the account has posted
+     */
+    List<Message> getMessagesByUser(int posted_by);
+
+    /**
+     * To get one page of an account's messages, newest first.
+     * @param posted_by The account_id of the messages poster.
+     * @param before the time_posted_epoch and message_id of the last message on the previous page, null for the
+     * first page
+     * @param limit the maximum number of messages to return
+     * @return the messages on the page, ordered by time_posted_epoch and then message_id, both descending
+     */
+    List<Message> getTimelinePage(int posted_by, long[] before, int limit);
+
+    /**
+     * To release the files or threads the store holds, once nothing will use it again. Does nothing for stores
+     * that hold none.
+     */
+    default void close() {
+    }
+}
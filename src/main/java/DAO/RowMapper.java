@@ -0,0 +1,63 @@
+package DAO;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Turns the current row of a ResultSet into an object. The static helpers run a query and read its rows inside
+ * try-with-resources, so the ResultSet is closed on every path, including when mapping throws, and a DAO method
+ * never leaves a cursor open behind it.
+ * @param <T> the type each row becomes
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    /**
+     * @param rs a result set positioned on a row
+     * @return the row as an object
+     */
+    T mapRow(ResultSet rs) throws SQLException;
+
+    /**
+     * @param pstmt a query with its parameters set
+     * @param mapper maps each row
+     * @return every row, in order
+     */
+    static <T> List<T> list(PreparedStatement pstmt, RowMapper<T> mapper) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(mapper.mapRow(rs));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param pstmt a query with its parameters set
+     * @param mapper maps the row
+     * @return the first row, or null if there is none
+     */
+    static <T> T first(PreparedStatement pstmt, RowMapper<T> mapper) throws SQLException {
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? mapper.mapRow(rs) : null;
+        }
+    }
+
+    /**
+     * @param pstmt a query with its parameters set
+     * @param mapper maps each row
+     * @param consumer receives each row as it is read
+     */
+    static <T> void forEach(PreparedStatement pstmt, RowMapper<T> mapper, Consumer<? super T> consumer)
+            throws SQLException {
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                consumer.accept(mapper.mapRow(rs));
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package DAO;
+
+import java.util.Locale;
+
+/**
+ * The storage engines messages, accounts and follows can be kept in, chosen at startup with the storage.engine
+ * property.
+ *
+ * Each call opens a new store, so an application asks for each kind once and hands the same instances to every
+ * service: with MEMORY, two account stores are two unrelated sets of accounts, and with LOG, a second message
+ * store on the same directory cannot be opened until the first is closed.
+ */
+public enum StorageEngine {
+    /**
+     * The H2 database behind ConnectionUtil. The default.
+     */
+    JDBC {
+        @Override
+        public MessageStore messageStore() {
+            return new MessageDao();
+        }
+
+        @Override
+        public AccountStore accountStore() {
+            return new AccountDao();
+        }
+
+        @Override
+        public FollowStore followStore() {
+            return new FollowDao();
+        }
+    },
+    /**
+     * The heap only: nothing is read or written outside the process and everything is lost when it exits. Meant for
+     * load tests and edge caches, and as a baseline for how much of a request's latency is the database.
+     */
+    MEMORY {
+        @Override
+        public MessageStore messageStore() {
+            return new InMemoryMessageStore();
+        }
+
+        @Override
+        public AccountStore accountStore() {
+            return new InMemoryAccountStore();
+        }
+
+        @Override
+        public FollowStore followStore() {
+            return new InMemoryFollowStore();
+        }
+    },
+    /**
+     * Messages in a memory-mapped append-only log, see {@link MessageLogStore}; accounts and follows in the H2
+     * database as with JDBC. Meant for write-heavy deployments.
+     */
+    LOG {
+        @Override
+        public MessageStore messageStore() {
+            return MessageLogStore.configured();
+        }
+
+        @Override
+        public AccountStore accountStore() {
+            return new AccountDao();
+        }
+
+        @Override
+        public FollowStore followStore() {
+            return new FollowDao();
+        }
+    };
+
+    /**
+     * @return a new, empty or freshly loaded, store of messages in this engine, to be closed when the application
+     * stops
+     */
+    public abstract MessageStore messageStore();
+
+    /**
+     * @return a new store of accounts in this engine
+     */
+    public abstract AccountStore accountStore();
+
+    /**
+     * @return a new store of follows in this engine
+     */
+    public abstract FollowStore followStore();
+
+    /**
+     * @return the engine named by storage.engine, jdbc if it is unset
+     * @throws IllegalArgumentException if storage.engine names no engine
+     */
+    public static StorageEngine configured() {
+        return valueOf(System.getProperty("storage.engine", "jdbc").trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,85 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of creating one message of a batch.
+ */
+public class MessageResult {
+    /**
+     * The position of the message in the submitted batch.
+     */
+    public int index;
+    /**
+     * 200 if the message was created, 400 if it failed validation, 500 if it could not be saved.
+     */
+    public int status;
+    /**
+     * The created message including its generated message_id, or null if it was not created.
+     */
+    public Message message;
+    /**
+     * Why the message was not created, or null if it was.
+     */
+    public String error;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageResult() {
+    }
+
+    /**
+     * @param index
+     * @param status
+     * @param message
+     * @param error
+     */
+    public MessageResult(int index, int status, Message message, String error) {
+        this.index = index;
+        this.status = status;
+        this.message = message;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageResult{" +
+                "index=" + index +
+                ", status=" + status +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
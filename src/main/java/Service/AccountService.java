@@ -1,10 +1,30 @@
 package Service;
 
-import DAO.AccountDao;
+import java.util.concurrent.CompletableFuture;
+
+import DAO.AccountStore;
 import Model.Account;
+import Util.DbExecutor;
 
 public class AccountService {
- private final AccountDao accountDao = new AccountDao();
+ private final AccountStore accountStore;
+ private final DbExecutor dbExecutor;
+
+ /**
+  * @param accountStore the store accounts are read and written through
+  */
+ public AccountService(AccountStore accountStore) {
+    this(accountStore, DbExecutor.shared());
+ }
+
+ /**
+  * @param accountStore the store accounts are read and written through
+  * @param dbExecutor the executor the async methods run their database work on
+  */
+ public AccountService(AccountStore accountStore, DbExecutor dbExecutor) {
+    this.accountStore = accountStore;
+    this.dbExecutor = dbExecutor;
+ }
 
  /**
  * @param account Tha account to be created
@@ -12,7 +32,7 @@ public class AccountService {
  */
 public Account createAccount(Account account) {
     if(validateAccount(account)) {
-       return accountDao.save(account);
+       return accountStore.save(account);
     }
     return account;
  }
@@ -23,12 +43,30 @@ public Account createAccount(Account account) {
   * @return the account if it exists
   */
  public Account login(Account account) {
-    Account authenticated = accountDao.authenticate(account.getUsername(), account.getPassword());
+    Account authenticated = accountStore.authenticate(account.getUsername(), account.getPassword());
     if(authenticated == null) {
         return account;
     }
     return authenticated;
  }
+ /**
+  * {@link #createAccount(Account)} on the database executor.
+  * @param account the account to be created
+  * @return a future of the account including the generated account_id if successful
+  */
+ public CompletableFuture<Account> createAccountAsync(Account account) {
+    return dbExecutor.supply(() -> createAccount(account));
+ }
+
+ /**
+  * {@link #login(Account)} on the database executor.
+  * @param account the account to be authenticated
+  * @return a future of the account if it exists
+  */
+ public CompletableFuture<Account> loginAsync(Account account) {
+    return dbExecutor.supply(() -> login(account));
+ }
+
  /**
   * TO check if the account is a valid account that meets the requirements.
   * @param account the accouunt to be validated.
@@ -42,7 +80,7 @@ private boolean validateAccount(Account account) {
     if(account.getUsername().trim().isEmpty() || account.getPassword().trim().length() < 4) {
         return false;
     }
-    if(accountDao.getAccountByUsername(account.getUsername()) != null) {
+    if(accountStore.isUsernameTaken(account.getUsername())) {
         return false;
     }
     return true;
@@ -0,0 +1,188 @@
+package Service;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import DAO.FollowStore;
+import DAO.MessageStore;
+import Model.Message;
+import Util.IntRingBuffer;
+import Util.LruCache;
+import Util.Metrics;
+
+/**
+ * Keeps each account's home feed as a bounded buffer of the newest message ids from the accounts it follows, so
+ * a feed page is read from memory with no join at request time.
+ *
+ * New messages are pushed into the buffers of the poster's followers when they are created (fan-out on write).
+ * Once an account has more than feed.fanoutThreshold followers, pushing every message to all of them costs more
+ * than it saves, so its messages are instead kept in a buffer of its own and merged into its followers' feeds
+ * when they are read (fan-out on read). An account stays on the read path once it has switched, so none of its
+ * messages fall between the two.
+ *
+ * Buffers are created and filled from the database the first time a feed is read, and dropped and refilled when
+ * the account follows or unfollows someone. Each holds at most feed.bufferSize ids, so a feed reaches back that
+ * many messages and costs four bytes per id. At most feed.maxBuffers home feeds and as many fan-out-on-read
+ * buffers are kept; the least recently read are dropped and refilled if they are read again.
+ */
+public class FeedService {
+    private final FollowStore followStore;
+    private final MessageStore messageStore;
+    private final int bufferSize = Integer.getInteger("feed.bufferSize", 800);
+    private final int fanoutThreshold = Integer.getInteger("feed.fanoutThreshold", 1000);
+    /**
+     * Home feeds by account id, for accounts whose feed has been read recently.
+     */
+    private final LruCache<Integer, Feed> feeds = new LruCache<>(Integer.getInteger("feed.maxBuffers", 10000), 0);
+    /**
+     * The newest messages of each account on the fan-out-on-read path, once a feed has needed them.
+     */
+    private final LruCache<Integer, Feed> authored = new LruCache<>(Integer.getInteger("feed.maxBuffers", 10000), 0);
+    private final Set<Integer> readFanout = ConcurrentHashMap.newKeySet();
+    private final LongAdder pushes = Metrics.counter("feed_pushes_total",
+        "Message ids pushed into home feed buffers", "");
+
+    /**
+     * @param followStore the store the follow graph is read through
+     * @param messageStore the store buffers are filled from
+     */
+    public FeedService(FollowStore followStore, MessageStore messageStore) {
+        this.followStore = followStore;
+        this.messageStore = messageStore;
+        Metrics.register("feed_buffers", "Home feed buffers in memory", "gauge", "", feeds::size);
+        Metrics.register("feed_buffer_evictions_total", "Home feed buffers dropped to stay under feed.maxBuffers",
+            "counter", "", () -> feeds.getStats().evictions);
+        Metrics.register("feed_read_fanout_accounts", "Accounts whose messages are merged into feeds on read",
+            "gauge", "", readFanout::size);
+    }
+
+    /**
+     * To deliver a newly created message to the feeds of the poster's followers
+     * @param message a message that has just been saved
+     */
+    public void onMessageCreated(Message message) {
+        int poster = message.getPosted_by();
+        int id = message.getMessage_id();
+        Feed own = authored.get(poster);
+        if (own != null) {
+            own.ids.add(id);
+        }
+        if (readFanout.contains(poster)) {
+            return;
+        }
+        if (followStore.getFollowerCount(poster) > fanoutThreshold) {
+            readFanout.add(poster);
+            return;
+        }
+        for (int follower : followStore.getFollowers(poster)) {
+            Feed feed = feeds.get(follower);
+            if (feed != null) {
+                feed.ids.add(id);
+                pushes.increment();
+            }
+        }
+    }
+
+    /**
+     * To drop the feed of an account whose follows have changed, so the next read refills it
+     * @param follower_id the account that followed or unfollowed someone
+     */
+    public void onFollowChanged(int follower_id) {
+        feeds.invalidate(follower_id);
+    }
+
+    /**
+     * @param account_id the account whose feed is read
+     * @param before only ids smaller than this are returned
+     * @param limit the maximum number of ids to return
+     * @return the ids of the newest messages in the feed below the bound, newest first
+     */
+    public int[] getFeedIds(int account_id, int before, int limit) {
+        Feed feed = feeds.computeIfAbsent(account_id, key -> new Feed(bufferSize));
+        int[] following = null;
+        if (!feed.loaded) {
+            following = followStore.getFollowing(account_id);
+            feed.load(messageStore, following);
+        }
+        int[] ids = feed.ids.newestBefore(before, limit);
+        if (readFanout.isEmpty()) {
+            return ids;
+        }
+        // Walk whichever side of the intersection of the read path and the account's follows is smaller
+        if (following != null || followStore.getFollowingCount(account_id) < readFanout.size()) {
+            if (following == null) {
+                following = followStore.getFollowing(account_id);
+            }
+            for (int poster : following) {
+                if (readFanout.contains(poster)) {
+                    ids = mergeAuthored(ids, poster, before, limit);
+                }
+            }
+        } else {
+            for (int poster : readFanout) {
+                if (followStore.isFollowing(account_id, poster)) {
+                    ids = mergeAuthored(ids, poster, before, limit);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private int[] mergeAuthored(int[] ids, int poster, int before, int limit) {
+        Feed own = authored.computeIfAbsent(poster, key -> new Feed(bufferSize));
+        own.load(messageStore, new int[] { poster });
+        return mergeNewest(ids, own.ids.newestBefore(before, limit), limit);
+    }
+
+    /**
+     * @param a ids in descending order
+     * @param b ids in descending order
+     * @param limit the maximum number of ids to return
+     * @return the largest distinct ids of both, in descending order
+     */
+    private static int[] mergeNewest(int[] a, int[] b, int limit) {
+        int[] merged = new int[Math.min(limit, a.length + b.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (count < merged.length && (i < a.length || j < b.length)) {
+            int next;
+            if (j == b.length || (i < a.length && a[i] >= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        return count == merged.length ? merged : Arrays.copyOf(merged, count);
+    }
+
+    /**
+     * A buffer of message ids, filled from the database once before its first read. Ids pushed before it is filled
+     * are kept, and the fill merges around them.
+     */
+    private static final class Feed {
+        final IntRingBuffer ids;
+        volatile boolean loaded;
+
+        Feed(int capacity) {
+            this.ids = new IntRingBuffer(capacity);
+        }
+
+        void load(MessageStore messageStore, int[] posters) {
+            if (loaded) {
+                return;
+            }
+            synchronized (this) {
+                if (!loaded) {
+                    ids.addAll(messageStore.getNewestIdsByPosters(posters, ids.capacity()));
+                    loaded = true;
+                }
+            }
+        }
+    }
+}
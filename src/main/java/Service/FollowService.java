@@ -0,0 +1,139 @@
+package Service;
+
+import java.util.concurrent.CompletableFuture;
+
+import DAO.AccountStore;
+import DAO.FollowStore;
+import Util.DbExecutor;
+
+public class FollowService {
+    private final FollowStore followStore;
+    private final AccountStore accountStore;
+    /**
+     * Home feeds to refresh when an account's follows change, null if there are none to keep in sync.
+     */
+    private final FeedService feedService;
+    private final DbExecutor dbExecutor;
+
+    /**
+     * @param followStore the store follows are read and written through
+     * @param accountStore the store used to check that both accounts exist
+     */
+    public FollowService(FollowStore followStore, AccountStore accountStore) {
+        this(followStore, accountStore, null);
+    }
+
+    /**
+     * @param followStore the store follows are read and written through
+     * @param accountStore the store used to check that both accounts exist
+     * @param feedService the home feeds to refresh when follows change, or null
+     */
+    public FollowService(FollowStore followStore, AccountStore accountStore, FeedService feedService) {
+        this(followStore, accountStore, feedService, DbExecutor.shared());
+    }
+
+    /**
+     * @param followStore the store follows are read and written through
+     * @param accountStore the store used to check that both accounts exist
+     * @param feedService the home feeds to refresh when follows change, or null
+     * @param dbExecutor the executor the async methods run their database work on
+     */
+    public FollowService(FollowStore followStore, AccountStore accountStore, FeedService feedService,
+            DbExecutor dbExecutor) {
+        this.followStore = followStore;
+        this.accountStore = accountStore;
+        this.feedService = feedService;
+        this.dbExecutor = dbExecutor;
+    }
+
+    /**
+     * To make one account follow another. Following an account already followed changes nothing.
+     * @param follower_id the account that follows
+     * @param followee_id the account to be followed
+     * @return true if follower_id now follows followee_id, false if the follow is not valid
+     */
+    public boolean follow(int follower_id, int followee_id) {
+        if (!validateFollow(follower_id, followee_id)) {
+            return false;
+        }
+        followStore.follow(follower_id, followee_id);
+        if (feedService != null) {
+            feedService.onFollowChanged(follower_id);
+        }
+        return followStore.isFollowing(follower_id, followee_id);
+    }
+
+    /**
+     * To stop one account following another. Unfollowing an account not followed changes nothing.
+     * @param follower_id the account that follows
+     * @param followee_id the account to stop following
+     * @return true if follower_id no longer follows followee_id, false if the follow is not valid
+     */
+    public boolean unfollow(int follower_id, int followee_id) {
+        if (!validateFollow(follower_id, followee_id)) {
+            return false;
+        }
+        followStore.unfollow(follower_id, followee_id);
+        if (feedService != null) {
+            feedService.onFollowChanged(follower_id);
+        }
+        return true;
+    }
+
+    /**
+     * {@link #follow(int, int)} on the database executor.
+     * @param follower_id the account that follows
+     * @param followee_id the account to be followed
+     * @return a future of whether follower_id now follows followee_id
+     */
+    public CompletableFuture<Boolean> followAsync(int follower_id, int followee_id) {
+        return dbExecutor.supply(() -> follow(follower_id, followee_id));
+    }
+
+    /**
+     * {@link #unfollow(int, int)} on the database executor.
+     * @param follower_id the account that follows
+     * @param followee_id the account to stop following
+     * @return a future of whether the unfollow was valid
+     */
+    public CompletableFuture<Boolean> unfollowAsync(int follower_id, int followee_id) {
+        return dbExecutor.supply(() -> unfollow(follower_id, followee_id));
+    }
+
+    /**
+     * @param account_id an account id
+     * @return the ids of the accounts it follows, ascending
+     */
+    public int[] getFollowing(int account_id) {
+        return followStore.getFollowing(account_id);
+    }
+
+    /**
+     * @param account_id an account id
+     * @return the ids of the accounts following it, ascending
+     */
+    public int[] getFollowers(int account_id) {
+        return followStore.getFollowers(account_id);
+    }
+
+    /**
+     * @param account_id an account id
+     * @return the number of accounts following it
+     */
+    public int getFollowerCount(int account_id) {
+        return followStore.getFollowerCount(account_id);
+    }
+
+    /**
+     * To check that a follow is between two different accounts that both exist.
+     * @param follower_id the account that follows
+     * @param followee_id the account followed
+     * @return true if the follow is valid
+     */
+    private boolean validateFollow(int follower_id, int followee_id) {
+        if (follower_id == followee_id) {
+            return false;
+        }
+        return accountStore.exists(follower_id) && accountStore.exists(followee_id);
+    }
+}
@@ -1,14 +1,93 @@
 package Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-import DAO.AccountDao;
-import DAO.MessageDao;
+import DAO.AccountStore;
+import DAO.GroupCommitWriter;
+import DAO.MessageStore;
+import DAO.MessageSearchIndex;
 import Model.Message;
+import Model.MessagePage;
+import Model.MessageResult;
+import Util.CursorUtil;
+import Util.DbExecutor;
+import Util.LruCache;
+import Util.Metrics;
 
 public class MessageService {
-    private final MessageDao messageDao = new MessageDao();
-    private final AccountDao accountDao = new AccountDao();
+    private final MessageStore messageStore;
+    private final AccountStore accountStore;
+    /**
+     * Keeps the home feeds, and is told about every message created here.
+     */
+    private final FeedService feedService;
+    /**
+     * Runs the blocking work behind the async variants of the methods below.
+     */
+    private final DbExecutor dbExecutor;
+    /**
+     * Batches concurrent inserts into shared commits when messages.groupCommit is set, null otherwise.
+     */
+    private final GroupCommitWriter groupCommitWriter;
+    /**
+     * Recently read or written messages by message_id, kept in sync by every write in this service.
+     */
+    private final LruCache<Integer, Message> cache = new LruCache<>(
+        Integer.getInteger("messages.cache.maxSize", 10000), Long.getLong("messages.cache.ttlMillis", 0));
+
+    /**
+     * @param messageStore the store messages are read and written through
+     * @param accountStore the store used to check that posters exist, shared with the AccountService so its
+     * account id index sees new registrations
+     * @param feedService the home feeds, shared with the FollowService so follows refresh them
+     */
+    public MessageService(MessageStore messageStore, AccountStore accountStore, FeedService feedService) {
+        this(messageStore, accountStore, feedService, DbExecutor.shared());
+    }
+
+    /**
+     * @param messageStore the store messages are read and written through
+     * @param accountStore the store used to check that posters exist
+     * @param feedService the home feeds, shared with the FollowService so follows refresh them
+     * @param dbExecutor the executor the async methods run their database work on
+     */
+    public MessageService(MessageStore messageStore, AccountStore accountStore, FeedService feedService,
+            DbExecutor dbExecutor) {
+        this.messageStore = messageStore;
+        this.accountStore = accountStore;
+        this.feedService = feedService;
+        this.dbExecutor = dbExecutor;
+        this.groupCommitWriter = Boolean.getBoolean("messages.groupCommit")
+            ? new GroupCommitWriter(messageStore, Long.getLong("messages.groupCommit.windowMicros", 2000),
+                Integer.getInteger("messages.groupCommit.maxBatchSize", 64))
+            : null;
+        Metrics.register("message_cache_size", "Messages in the message cache", "gauge", "",
+            () -> cache.getStats().size);
+        Metrics.register("message_cache_hits_total", "Message cache hits", "counter", "",
+            () -> cache.getStats().hits);
+        Metrics.register("message_cache_misses_total", "Message cache misses", "counter", "",
+            () -> cache.getStats().misses);
+        Metrics.register("message_cache_evictions_total", "Messages evicted from the message cache", "counter", "",
+            () -> cache.getStats().evictions);
+        Metrics.register("message_cache_expirations_total", "Messages expired from the message cache", "counter",
+            "", () -> cache.getStats().expirations);
+    }
+
+    /**
+     * Stops the group commit writer, if there is one, once the messages it has queued are saved. Called before the
+     * message store is closed.
+     */
+    public void close() {
+        if (groupCommitWriter != null) {
+            groupCommitWriter.close();
+        }
+    }
 
     /**
      * Persists the given message in the database
@@ -16,52 +95,191 @@ public class MessageService {
      * @return the message with its generated id
      */
     public Message createMessage(Message message) {
-        if (validateMessage(message)) {
-            return messageDao.save(message);
+        return createMessage(message, false);
+    }
+
+    /**
+     * Persists the given message in the database
+     * @param message the message to be persisted
+     * @param posterVerified true if the caller has already established that the poster exists, such as from a
+     * session token, so the account lookup can be skipped
+     * @return the message with its generated id
+     */
+    public Message createMessage(Message message, boolean posterVerified) {
+        if (validateMessage(message, posterVerified)) {
+            if (groupCommitWriter != null) {
+                message = groupCommitWriter.save(message);
+            } else {
+                message = messageStore.save(message);
+            }
+            if (message.getMessage_id() > 0) {
+                cache.put(message.getMessage_id(), copy(message));
+                feedService.onMessageCreated(message);
+            }
         }
         return message;
     }
 
+    /**
+     * Persists a batch of messages. Every poster is checked with one lookup for the whole batch, and the valid
+     * messages are inserted with one JDBC batch in a single transaction, so the cost per message is a fraction of
+     * a round trip rather than several.
+     * @param messages the messages to be persisted
+     * @return one result per message, in the order given, with the generated ids of the created messages
+     */
+    public List<MessageResult> createMessages(List<Message> messages) {
+        return createMessages(messages, false);
+    }
+
+    /**
+     * Persists a batch of messages, as {@link #createMessages(List)}
+     * @param messages the messages to be persisted
+     * @param postersVerified true if the caller has already established that every poster exists, so the account
+     * lookup can be skipped
+     * @return one result per message, in the order given, with the generated ids of the created messages
+     */
+    public List<MessageResult> createMessages(List<Message> messages, boolean postersVerified) {
+        Set<Integer> posters = new HashSet<>();
+        for (Message message : messages) {
+            if (message != null) {
+                posters.add(message.getPosted_by());
+            }
+        }
+        Set<Integer> existing = postersVerified ? posters : accountStore.existingIds(posters);
+        List<MessageResult> results = new ArrayList<>(messages.size());
+        List<Message> valid = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message == null || !existing.contains(message.getPosted_by())) {
+                results.add(new MessageResult(i, 400, null, "Unknown account"));
+            } else if (message.getMessage_text() == null || !validateMessageText(message.getMessage_text())) {
+                results.add(new MessageResult(i, 400, null, "Invalid message text"));
+            } else {
+                results.add(new MessageResult(i, 200, message, null));
+                valid.add(message);
+            }
+        }
+        messageStore.saveAll(valid);
+        for (MessageResult result : results) {
+            Message message = result.getMessage();
+            if (message == null) {
+                continue;
+            }
+            if (message.getMessage_id() > 0) {
+                cache.put(message.getMessage_id(), copy(message));
+                feedService.onMessageCreated(message);
+            } else {
+                result.setStatus(500);
+                result.setMessage(null);
+                result.setError("Could not save message");
+            }
+        }
+        return results;
+    }
+
     /**
      * Retrieves all messages from the database
      * @return a list of all messages if any
      */
     public List<Message> getAllMessages() {
-        return messageDao.getAll();
+        return messageStore.getAll();
+    }
+
+    /**
+     * Hands every message in the database to the consumer one at a time, without holding them all in memory.
+     * @param consumer receives each message in message_id order
+     */
+    public void streamAllMessages(Consumer<Message> consumer) {
+        messageStore.forEach(consumer);
+    }
+
+    /**
+     * Retrieves one page of messages in message_id order.
+     * @param afterId the message_id decoded from the previous page's cursor, 0 for the first page
+     * @param limit the maximum number of messages on the page
+     * @return the page, with a cursor for the next page if there are more messages
+     */
+    public MessagePage getMessagesPage(int afterId, int limit) {
+        List<Message> messages = messageStore.getPage(afterId, limit + 1);
+        String next = null;
+        if (messages.size() > limit) {
+            messages.remove(limit);
+            next = CursorUtil.encode(messages.get(limit - 1).getMessage_id());
+        }
+        return new MessagePage(messages, next);
     }
 
     /**
-     * Retrieves a message with the given message id from the database.
+     * Retrieves a message with the given message id, from the cache if possible and from the database otherwise.
      * @param id the message id
      * @return the message if it exists
      */
     public Message getMessageById(int id) {
-        return messageDao.getMessageById(id);
+        Message cached = cache.get(id);
+        if (cached != null) {
+            return copy(cached);
+        }
+        return loadMessageById(id);
     }
 
     /**
-     * Deletes the message with the given id from the database.
+     * To read a message the cache has just missed from the store, and cache it.
+     * @param id the message id
+     * @return the message if it exists
+     */
+    private Message loadMessageById(int id) {
+        long generation = cache.generation();
+        Message message = messageStore.getMessageById(id);
+        if (message.getMessage_id() > 0) {
+            cache.putIfUnchanged(id, copy(message), generation);
+        }
+        return message;
+    }
+
+    /**
+     * Deletes the message with the given id from the database, in one database call.
      * @param id the id of the message to be deleted
+     * @return the deleted message, or an empty message if there was none
      */
-    public void deleteMessage(int id) {
-        messageDao.remove(id);
+    public Message deleteMessage(int id) {
+        return deleteMessage(id, 0);
     }
 
     /**
-     * To update the text of the message with the given message id
+     * Deletes the message with the given id if the given account posted it, in one database call.
+     * @param id the id of the message to be deleted
+     * @param posted_by the account that must have posted the message, 0 for any
+     * @return the deleted message, or an empty message if there was none
+     */
+    public Message deleteMessage(int id, int posted_by) {
+        Message message = messageStore.remove(id, posted_by);
+        cache.invalidate(id);
+        return message;
+    }
+
+    /**
+     * To update the text of the message with the given message id, in one database call
      * @param id the id of the message to be updated
      * @param message_text the new message text
-     * @return the updated message if successful, the old message otherwise
+     * @return the updated message if successful, an empty message otherwise
      */
     public Message updateMessageText(int id, String message_text) {
+        return updateMessageText(id, message_text, 0);
+    }
+
+    /**
+     * To update the text of the message with the given message id if the given account posted it, in one
+     * database call
+     * @param id the id of the message to be updated
+     * @param message_text the new message text
+     * @param posted_by the account that must have posted the message, 0 for any
+     * @return the updated message if successful, an empty message otherwise
+     */
+    public Message updateMessageText(int id, String message_text, int posted_by) {
         Message message = new Message();
         if (validateMessageText(message_text)) {
-            message = getMessageById(id);
-            
-            if (message.getMessage_id() > 0) {
-                message.setMessage_text(message_text);
-                messageDao.update(message);   
-            }
+            message = messageStore.updateText(id, message_text, posted_by);
+            cache.invalidate(id);
         }
         return message;
     }
@@ -69,11 +287,12 @@ public class MessageService {
     /**
      * To validate a message object
      * @param message the message to be validated
+     * @param posterVerified true if the poster is already known to exist
      * @return true if the message meets all requirements, false otherwise.
      */
-    private boolean validateMessage(Message message) {
+    private boolean validateMessage(Message message, boolean posterVerified) {
         String text = message.getMessage_text();
-        if (accountDao.getAccountById(message.getPosted_by()) == null) {
+        if (!posterVerified && !accountStore.exists(message.getPosted_by())) {
             return false;
         }
         return validateMessageText(text);
@@ -97,6 +316,259 @@ public class MessageService {
      * @return A list of all messages posted by the account, an empty list otherwise
      */
     public List<Message> getUserMessages(int posted_by) {
-        return messageDao.getMessagesByUser(posted_by);
+        return messageStore.getMessagesByUser(posted_by);
+    }
+
+    /**
+     * To retrieve one page of the messages posted by the account, newest first
+     * @param posted_by the account id of the messages poster
+     * @param before the keys decoded from the previous page's cursor, null for the first page
+     * @param limit the maximum number of messages on the page
+     * @return the page, with a cursor for the next (older) page if there are more messages
+     */
+    public MessagePage getUserMessagesPage(int posted_by, long[] before, int limit) {
+        List<Message> messages = messageStore.getTimelinePage(posted_by, before, limit + 1);
+        String next = null;
+        if (messages.size() > limit) {
+            messages.remove(limit);
+            Message last = messages.get(limit - 1);
+            next = CursorUtil.encode(last.getTime_posted_epoch(), last.getMessage_id());
+        }
+        return new MessagePage(messages, next);
+    }
+
+    /**
+     * To search message text, best matches first. Ranking runs on the in-memory search index; the messages on the
+     * page come from the cache where possible and from one database query for the rest.
+     * @param query terms that must all appear, with OR between alternatives
+     * @param offset the number of best matches to skip, decoded from the previous page's cursor
+     * @param limit the maximum number of messages on the page
+     * @return the page, with a cursor for the next page if there are more matches
+     */
+    public MessagePage searchMessages(String query, int offset, int limit) {
+        MessageSearchIndex.SearchResult result = messageStore.search(query, offset, limit);
+        List<Message> messages = getMessagesInOrder(result.ids);
+        int end = offset + result.ids.length;
+        return new MessagePage(messages, end < result.total ? CursorUtil.encode(end) : null);
+    }
+
+    /**
+     * To retrieve one page of an account's home feed: the messages of the accounts it follows, newest first. The
+     * ids come from the in-memory feed; the messages from the cache where possible and from one database query for
+     * the rest.
+     * @param account_id the account whose feed is read
+     * @param before the message_id decoded from the previous page's cursor, Integer.MAX_VALUE for the first page
+     * @param limit the maximum number of messages on the page
+     * @return the page, with a cursor for the next (older) page if there are more messages
+     */
+    public MessagePage getFeed(int account_id, int before, int limit) {
+        int[] ids = feedService.getFeedIds(account_id, before, limit + 1);
+        String next = null;
+        if (ids.length > limit) {
+            ids = Arrays.copyOf(ids, limit);
+            next = CursorUtil.encode(ids[limit - 1]);
+        }
+        return new MessagePage(getMessagesInOrder(ids), next);
+    }
+
+    /**
+     * @param ids message ids in the order wanted
+     * @return the messages with those ids that still exist, in the same order
+     */
+    private List<Message> getMessagesInOrder(int[] ids) {
+        Message[] ordered = new Message[ids.length];
+        int[] missing = new int[ids.length];
+        int missingCount = 0;
+        for (int i = 0; i < ordered.length; i++) {
+            Message cached = cache.get(ids[i]);
+            if (cached != null) {
+                ordered[i] = copy(cached);
+            } else {
+                missing[missingCount++] = ids[i];
+            }
+        }
+        if (missingCount > 0) {
+            List<Message> loaded = messageStore.getMessagesByIds(Arrays.copyOf(missing, missingCount));
+            int next = 0;
+            for (int i = 0; i < ordered.length && next < loaded.size(); i++) {
+                if (ordered[i] == null && loaded.get(next).getMessage_id() == ids[i]) {
+                    ordered[i] = loaded.get(next++);
+                }
+            }
+        }
+        List<Message> messages = new ArrayList<>(ordered.length);
+        for (Message message : ordered) {
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Hands every message posted by the account to the consumer one at a time.
+     * @param posted_by the account id of the messages poster
+     * @param consumer receives each message in message_id order
+     */
+    public void streamUserMessages(int posted_by, Consumer<Message> consumer) {
+        messageStore.forEachByUser(posted_by, consumer);
+    }
+
+    /**
+     * @return the version of the message table, which changes whenever a message is created, updated or deleted
+     */
+    public long getMessagesVersion() {
+        return messageStore.getVersion();
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the message cache
+     */
+    public LruCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * {@link #createMessage(Message)} on the database executor.
+     * @param message the message to be persisted
+     * @return a future of the message with its generated id
+     */
+    public CompletableFuture<Message> createMessageAsync(Message message) {
+        return createMessageAsync(message, false);
+    }
+
+    /**
+     * {@link #createMessage(Message, boolean)} on the database executor.
+     * @param message the message to be persisted
+     * @param posterVerified true if the poster is already known to exist
+     * @return a future of the message with its generated id
+     */
+    public CompletableFuture<Message> createMessageAsync(Message message, boolean posterVerified) {
+        return dbExecutor.supply(() -> createMessage(message, posterVerified));
+    }
+
+    /**
+     * {@link #createMessages(List)} on the database executor.
+     * @param messages the messages to be persisted
+     * @return a future of one result per message
+     */
+    public CompletableFuture<List<MessageResult>> createMessagesAsync(List<Message> messages) {
+        return createMessagesAsync(messages, false);
+    }
+
+    /**
+     * {@link #createMessages(List, boolean)} on the database executor.
+     * @param messages the messages to be persisted
+     * @param postersVerified true if every poster is already known to exist
+     * @return a future of one result per message
+     */
+    public CompletableFuture<List<MessageResult>> createMessagesAsync(List<Message> messages,
+            boolean postersVerified) {
+        return dbExecutor.supply(() -> createMessages(messages, postersVerified));
+    }
+
+    /**
+     * {@link #getAllMessages()} on the database executor.
+     * @return a future of the list of all messages
+     */
+    public CompletableFuture<List<Message>> getAllMessagesAsync() {
+        return dbExecutor.supply(this::getAllMessages);
+    }
+
+    /**
+     * {@link #getMessagesPage(int, int)} on the database executor.
+     * @param afterId the message_id decoded from the previous page's cursor, 0 for the first page
+     * @param limit the maximum number of messages on the page
+     * @return a future of the page
+     */
+    public CompletableFuture<MessagePage> getMessagesPageAsync(int afterId, int limit) {
+        return dbExecutor.supply(() -> getMessagesPage(afterId, limit));
+    }
+
+    /**
+     * {@link #getMessageById(int)}, answered at once from the cache when possible and on the database executor
+     * otherwise, so cache hits never wait behind database work.
+     * @param id the message id
+     * @return a future of the message if it exists
+     */
+    public CompletableFuture<Message> getMessageByIdAsync(int id) {
+        Message cached = cache.get(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(copy(cached));
+        }
+        return dbExecutor.supply(() -> loadMessageById(id));
+    }
+
+    /**
+     * {@link #deleteMessage(int, int)} on the database executor.
+     * @param id the id of the message to be deleted
+     * @param posted_by the account that must have posted the message, 0 for any
+     * @return a future of the deleted message, or of an empty message if there was none
+     */
+    public CompletableFuture<Message> deleteMessageAsync(int id, int posted_by) {
+        return dbExecutor.supply(() -> deleteMessage(id, posted_by));
+    }
+
+    /**
+     * {@link #updateMessageText(int, String, int)} on the database executor.
+     * @param id the id of the message to be updated
+     * @param message_text the new message text
+     * @param posted_by the account that must have posted the message, 0 for any
+     * @return a future of the updated message if successful, of an empty message otherwise
+     */
+    public CompletableFuture<Message> updateMessageTextAsync(int id, String message_text, int posted_by) {
+        return dbExecutor.supply(() -> updateMessageText(id, message_text, posted_by));
+    }
+
+    /**
+     * {@link #searchMessages(String, int, int)} on the database executor.
+     * @param query terms that must all appear, with OR between alternatives
+     * @param offset the number of best matches to skip
+     * @param limit the maximum number of messages on the page
+     * @return a future of the page
+     */
+    public CompletableFuture<MessagePage> searchMessagesAsync(String query, int offset, int limit) {
+        return dbExecutor.supply(() -> searchMessages(query, offset, limit));
+    }
+
+    /**
+     * {@link #getFeed(int, int, int)} on the database executor.
+     * @param account_id the account whose feed is read
+     * @param before the message_id decoded from the previous page's cursor, Integer.MAX_VALUE for the first page
+     * @param limit the maximum number of messages on the page
+     * @return a future of the page
+     */
+    public CompletableFuture<MessagePage> getFeedAsync(int account_id, int before, int limit) {
+        return dbExecutor.supply(() -> getFeed(account_id, before, limit));
+    }
+
+    /**
+     * {@link #getUserMessages(int)} on the database executor.
+     * @param posted_by the account id of the messages poster
+     * @return a future of the list of messages posted by the account
+     */
+    public CompletableFuture<List<Message>> getUserMessagesAsync(int posted_by) {
+        return dbExecutor.supply(() -> getUserMessages(posted_by));
+    }
+
+    /**
+     * {@link #getUserMessagesPage(int, long[], int)} on the database executor.
+     * @param posted_by the account id of the messages poster
+     * @param before the keys decoded from the previous page's cursor, null for the first page
+     * @param limit the maximum number of messages on the page
+     * @return a future of the page
+     */
+    public CompletableFuture<MessagePage> getUserMessagesPageAsync(int posted_by, long[] before, int limit) {
+        return dbExecutor.supply(() -> getUserMessagesPage(posted_by, before, limit));
+    }
+
+    /**
+     * Callers are free to modify the messages this service returns, so the cache only ever hands out copies.
+     * @param message the message to copy
+     * @return a copy of the message
+     */
+    private static Message copy(Message message) {
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+            message.getTime_posted_epoch());
     }
 }
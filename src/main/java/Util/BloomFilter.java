@@ -0,0 +1,136 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe Bloom filter over strings. {@link #mightContain(String)} never answers false for a string that was
+ * added, and answers true for a string that was never added with roughly the configured false positive rate, as
+ * long as no more than the expected number of strings have been added.
+ */
+public class BloomFilter {
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashCount;
+    private final long expectedInsertions;
+    private final double targetFpp;
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * @param expectedInsertions the number of strings the filter is sized for
+     * @param fpp the desired false positive probability at that many insertions
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions < 1 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("Invalid bloom filter sizing: n=" + expectedInsertions
+                + ", fpp=" + fpp);
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+        this.words = new AtomicLongArray(words);
+        this.bitSize = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+        this.expectedInsertions = expectedInsertions;
+        this.targetFpp = fpp;
+    }
+
+    /**
+     * @param value the string to add
+     */
+    public void add(String value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitSize);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word = words.get(index);
+            while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                word = words.get(index);
+            }
+        }
+        insertions.increment();
+    }
+
+    /**
+     * @param value the string to look for
+     * @return false if the string was definitely never added, true if it may have been
+     */
+    public boolean mightContain(String value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the filter's sizing and an estimate of its current false positive rate
+     */
+    public Stats getStats() {
+        long n = insertions.sum();
+        double expectedFpp = Math.pow(1 - Math.exp(-(double) hashCount * n / bitSize), hashCount);
+        return new Stats(bitSize, hashCount, expectedInsertions, n, targetFpp, expectedFpp);
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes of the string, finished with a mixing step.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The finalizer from MurmurHash3, which spreads every input bit across the whole result.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * A snapshot of the filter's sizing and fill.
+     */
+    public static final class Stats {
+        public final long bitSize;
+        public final int hashCount;
+        public final long expectedInsertions;
+        public final long insertions;
+        public final double targetFpp;
+        public final double expectedFpp;
+
+        private Stats(long bitSize, int hashCount, long expectedInsertions, long insertions, double targetFpp,
+                double expectedFpp) {
+            this.bitSize = bitSize;
+            this.hashCount = hashCount;
+            this.expectedInsertions = expectedInsertions;
+            this.insertions = insertions;
+            this.targetFpp = targetFpp;
+            this.expectedFpp = expectedFpp;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "bitSize=" + bitSize +
+                    ", hashCount=" + hashCount +
+                    ", insertions=" + insertions +
+                    ", expectedFpp=" + expectedFpp +
+                    '}';
+        }
+    }
+}
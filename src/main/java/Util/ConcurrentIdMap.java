@@ -0,0 +1,156 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * A concurrent map from non-negative int ids to values, for ids handed out by a sequence and so densely packed.
+ * The id is the index: values sit in chunks of 16384 slots under a fixed directory, and a chunk is allocated the
+ * first time an id in it is stored. Reads are two array loads and writes a compare-and-set, with no lock, no
+ * hashing and no boxed key. A chunk is kept once allocated, so the map suits tables that grow far more than they
+ * shrink.
+ * @param <V> the type of the values
+ */
+public class ConcurrentIdMap<V> {
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<V>> chunks =
+        new AtomicReferenceArray<>(1 << (Integer.SIZE - 1 - CHUNK_BITS));
+    private final AtomicInteger size = new AtomicInteger();
+    /**
+     * The highest id ever stored, so scans know where to stop.
+     */
+    private final AtomicInteger maxId = new AtomicInteger(-1);
+
+    /**
+     * @param id an id
+     * @return the value stored for the id, or null if there is none
+     */
+    public V get(int id) {
+        AtomicReferenceArray<V> chunk = id < 0 ? null : chunks.get(id >>> CHUNK_BITS);
+        return chunk == null ? null : chunk.get(id & CHUNK_MASK);
+    }
+
+    /**
+     * @param id a non-negative id
+     * @param value the value to store
+     * @return the value it replaced, or null if there was none
+     */
+    public V put(int id, V value) {
+        V previous = chunkFor(id).getAndSet(id & CHUNK_MASK, value);
+        if (previous == null) {
+            added(id);
+        }
+        return previous;
+    }
+
+    /**
+     * @param id a non-negative id
+     * @param value the value to store if the id has none
+     * @return the value already stored, or null if this one was stored
+     */
+    public V putIfAbsent(int id, V value) {
+        AtomicReferenceArray<V> chunk = chunkFor(id);
+        int slot = id & CHUNK_MASK;
+        while (true) {
+            if (chunk.compareAndSet(slot, null, value)) {
+                added(id);
+                return null;
+            }
+            V existing = chunk.get(slot);
+            if (existing != null) {
+                return existing;
+            }
+        }
+    }
+
+    /**
+     * @param id a non-negative id
+     * @param factory creates the value if the id has none; it may run and be discarded under contention
+     * @return the value stored for the id
+     */
+    public V computeIfAbsent(int id, IntFunction<? extends V> factory) {
+        V existing = get(id);
+        if (existing != null) {
+            return existing;
+        }
+        V created = factory.apply(id);
+        existing = putIfAbsent(id, created);
+        return existing == null ? created : existing;
+    }
+
+    /**
+     * @param id an id
+     * @param expected the value the id must hold
+     * @param value the value to store instead
+     * @return true if the id held the expected value and now holds the new one
+     */
+    public boolean replace(int id, V expected, V value) {
+        AtomicReferenceArray<V> chunk = id < 0 ? null : chunks.get(id >>> CHUNK_BITS);
+        return chunk != null && expected != null && value != null
+            && chunk.compareAndSet(id & CHUNK_MASK, expected, value);
+    }
+
+    /**
+     * @param id an id
+     * @param expected the value the id must hold
+     * @return true if the id held the expected value and it was removed
+     */
+    public boolean remove(int id, V expected) {
+        AtomicReferenceArray<V> chunk = id < 0 ? null : chunks.get(id >>> CHUNK_BITS);
+        if (chunk != null && expected != null && chunk.compareAndSet(id & CHUNK_MASK, expected, null)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param after an id, or -1 to start from the beginning
+     * @return the lowest id greater than after that holds a value, or -1 if there is none
+     */
+    public int nextId(int after) {
+        int last = maxId.get();
+        int id = after + 1;
+        while (id >= 0 && id <= last) {
+            AtomicReferenceArray<V> chunk = chunks.get(id >>> CHUNK_BITS);
+            if (chunk == null) {
+                id = ((id >>> CHUNK_BITS) + 1) << CHUNK_BITS;
+                continue;
+            }
+            if (chunk.get(id & CHUNK_MASK) != null) {
+                return id;
+            }
+            id++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of ids holding a value
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private AtomicReferenceArray<V> chunkFor(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("id must not be negative: " + id);
+        }
+        int index = id >>> CHUNK_BITS;
+        AtomicReferenceArray<V> chunk = chunks.get(index);
+        if (chunk == null) {
+            chunks.compareAndSet(index, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(index);
+        }
+        return chunk;
+    }
+
+    private void added(int id) {
+        size.incrementAndGet();
+        maxId.accumulateAndGet(id, Math::max);
+    }
+}
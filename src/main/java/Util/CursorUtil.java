@@ -0,0 +1,51 @@
+package Util;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursors handed out by paginated endpoints. A cursor is the sort key of the last
+ * row on a page, packed as big-endian longs and base64url encoded so clients treat it as an opaque token.
+ */
+public class CursorUtil {
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private CursorUtil() {
+    }
+
+    /**
+     * @param keys the sort key of the last row on the page
+     * @return an opaque cursor for the page after that row
+     */
+    public static String encode(long... keys) {
+        ByteBuffer buffer = ByteBuffer.allocate(keys.length * Long.BYTES);
+        for (long key : keys) {
+            buffer.putLong(key);
+        }
+        return ENCODER.encodeToString(buffer.array());
+    }
+
+    /**
+     * @param cursor a cursor previously returned by {@link #encode(long...)}
+     * @param keyCount the number of keys the cursor is expected to hold
+     * @return the decoded keys, or null if the cursor is malformed
+     */
+    public static long[] decode(String cursor, int keyCount) {
+        byte[] bytes;
+        try {
+            bytes = DECODER.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length != keyCount * Long.BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long[] keys = new long[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = buffer.getLong();
+        }
+        return keys;
+    }
+}
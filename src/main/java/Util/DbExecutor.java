@@ -0,0 +1,131 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A fixed-size pool of threads for blocking database work, fed by a bounded queue, so request threads hand JDBC
+ * calls off instead of blocking on them and a burst of requests queues here rather than piling up on the
+ * connection pool.
+ *
+ * The thread count defaults to the connection pool's maximum size, since a thread beyond that would only wait for
+ * a connection. Once the queue is full, new work is refused straight away with a RejectedExecutionException rather
+ * than queued without bound. How long tasks wait in the queue and how long they run are recorded separately, so
+ * a slow database and an undersized executor can be told apart.
+ */
+public class DbExecutor {
+    private static volatile DbExecutor shared;
+
+    private final ThreadPoolExecutor executor;
+    private final LatencyHistogram queueWait;
+    private final LatencyHistogram taskDuration;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param threads the number of database threads
+     * @param queueCapacity the maximum number of tasks waiting for a thread
+     */
+    public DbExecutor(int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, "db-executor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), factory, new ThreadPoolExecutor.AbortPolicy());
+        this.queueWait = Metrics.histogram("db_executor_queue_wait_seconds",
+            "Time database tasks wait for an executor thread", "");
+        this.taskDuration = Metrics.histogram("db_executor_task_duration_seconds",
+            "Time database tasks run on an executor thread", "");
+    }
+
+    /**
+     * @return the executor shared by the services, sized by db.executor.threads and db.executor.queueCapacity
+     */
+    public static DbExecutor shared() {
+        DbExecutor executor = shared;
+        if (executor == null) {
+            synchronized (DbExecutor.class) {
+                executor = shared;
+                if (executor == null) {
+                    executor = new DbExecutor(
+                        Integer.getInteger("db.executor.threads", ConnectionUtil.getPoolStats().maxSize),
+                        Integer.getInteger("db.executor.queueCapacity", 1000));
+                    executor.registerGauges();
+                    shared = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Exposes the queue depth, busy threads and rejections of this executor; only the shared executor does, so a
+     * private one cannot replace its readings.
+     */
+    private void registerGauges() {
+        Metrics.register("db_executor_queue_depth", "Database tasks waiting for an executor thread", "gauge", "",
+            this::getQueueDepth);
+        Metrics.register("db_executor_active_threads", "Executor threads running a database task", "gauge", "",
+            executor::getActiveCount);
+        Metrics.register("db_executor_rejected_total", "Database tasks refused because the executor queue was full",
+            "counter", "", this::getRejectedCount);
+    }
+
+    /**
+     * To run a task on a database thread
+     * @param task the blocking work to run
+     * @return a future completed with the task's result, or exceptionally with whatever it threw, or with a
+     * RejectedExecutionException if the queue was full
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long submitted = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                queueWait.record(start - submitted);
+                try {
+                    future.complete(task.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    taskDuration.recordSince(start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of tasks refused because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops accepting tasks and lets the queued ones finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
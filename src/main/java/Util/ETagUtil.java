@@ -0,0 +1,83 @@
+package Util;
+
+import Model.Message;
+
+/**
+ * Builds the strong entity tags sent with message responses and evaluates If-None-Match against them. A single
+ * message is tagged with its id and a hash of its content; a list of messages is tagged with the version of the
+ * message table it was read at, so an unchanged poll can be answered without touching the database.
+ */
+public class ETagUtil {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ETagUtil() {
+    }
+
+    /**
+     * @param message an existing message
+     * @return the entity tag of the message's JSON representation
+     */
+    public static String forMessage(Message message) {
+        long hash = FNV_OFFSET;
+        hash = mix(hash, message.getPosted_by());
+        hash = mix(hash, message.getTime_posted_epoch());
+        String text = message.getMessage_text();
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return "\"m" + message.getMessage_id() + "-" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * @param version the version of the message table the response was read at
+     * @return the entity tag of a list of messages read at that version
+     */
+    public static String forVersion(long version) {
+        return "\"v" + Long.toHexString(version) + "\"";
+    }
+
+    /**
+     * A strong tag names one exact byte sequence, so a gzip-encoded body needs a tag of its own.
+     * @param etag the entity tag of the identity representation
+     * @return the entity tag of the same representation sent with gzip content coding
+     */
+    public static String forGzip(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gz\"";
+    }
+
+    /**
+     * Uses the weak comparison If-None-Match calls for, so a W/ prefix added by an intermediary still matches.
+     * @param ifNoneMatch the If-None-Match request header, null if absent
+     * @param etag the entity tag of the current representation
+     * @return true if the client's copy is current and a 304 can be sent instead
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
+}
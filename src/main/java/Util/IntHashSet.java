@@ -0,0 +1,170 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * A set of ints stored in an open-addressed table of primitive ints, so membership is O(1) without boxing and an
+ * entry costs four to eight bytes instead of the forty or so of a HashSet&lt;Integer&gt;. Not thread-safe; callers
+ * guard it with their own lock.
+ */
+public class IntHashSet {
+    private static final int FREE = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] slots;
+    private int size;
+    /**
+     * 0 marks a free slot, so whether 0 itself is in the set is kept apart.
+     */
+    private boolean containsZero;
+
+    public IntHashSet() {
+        this(4);
+    }
+
+    /**
+     * @param expectedSize the number of values the set should hold before it first grows
+     */
+    public IntHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) * 2 - 1);
+        slots = new int[Math.max(4, capacity)];
+    }
+
+    /**
+     * @param value the value to add
+     * @return true if the value was not already in the set
+     */
+    public boolean add(int value) {
+        if (value == FREE) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        while (slots[slot] != FREE) {
+            if (slots[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = value;
+        size++;
+        if (size > slots.length * LOAD_FACTOR) {
+            rehash(slots.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * @param value the value to look for
+     * @return true if the value is in the set
+     */
+    public boolean contains(int value) {
+        if (value == FREE) {
+            return containsZero;
+        }
+        int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        while (slots[slot] != FREE) {
+            if (slots[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @param value the value to remove
+     * @return true if the value was in the set
+     */
+    public boolean remove(int value) {
+        if (value == FREE) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+        int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        while (slots[slot] != FREE) {
+            if (slots[slot] == value) {
+                slots[slot] = FREE;
+                size--;
+                closeGap(slot, mask);
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of values in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the values in the set, in ascending order
+     */
+    public int[] toArray() {
+        int[] values = new int[size];
+        int i = 0;
+        if (containsZero) {
+            values[i++] = 0;
+        }
+        for (int value : slots) {
+            if (value != FREE) {
+                values[i++] = value;
+            }
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    /**
+     * Linear probing cannot leave a hole in a run of entries, or lookups for the entries after it would stop
+     * early, so entries that probed past the freed slot are moved back into it.
+     */
+    private void closeGap(int freed, int mask) {
+        int slot = (freed + 1) & mask;
+        while (slots[slot] != FREE) {
+            int home = hash(slots[slot]) & mask;
+            // the entry can move to the freed slot if its home is not cyclically within (freed, slot]
+            if (((slot - home) & mask) >= ((slot - freed) & mask)) {
+                slots[freed] = slots[slot];
+                slots[slot] = FREE;
+                freed = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] old = slots;
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int value : old) {
+            if (value != FREE) {
+                int slot = hash(value) & mask;
+                while (slots[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = value;
+            }
+        }
+    }
+
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,140 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-capacity ring of distinct ints kept in ascending order, which retains the largest values it has been
+ * given and drops the smallest once full. Message ids grow over time, so this holds the newest ids of a feed in
+ * a fixed amount of memory, and because adds nearly always arrive in order, an add is O(1) in practice and a read
+ * of the newest n values below a bound is a binary search plus n copies. Thread-safe.
+ */
+public class IntRingBuffer {
+    private final int[] values;
+    private int head;
+    private int size;
+
+    /**
+     * @param capacity the maximum number of values retained
+     */
+    public IntRingBuffer(int capacity) {
+        this.values = new int[Math.max(1, capacity)];
+    }
+
+    /**
+     * @param value the value to add; values already present, or smaller than everything in a full buffer, are
+     * ignored
+     */
+    public synchronized void add(int value) {
+        if (size == values.length) {
+            if (value <= get(0)) {
+                return;
+            }
+            head = (head + 1) % values.length;
+            size--;
+        }
+        int position = size;
+        while (position > 0 && get(position - 1) > value) {
+            position--;
+        }
+        if (position > 0 && get(position - 1) == value) {
+            return;
+        }
+        for (int i = size; i > position; i--) {
+            set(i, get(i - 1));
+        }
+        set(position, value);
+        size++;
+    }
+
+    /**
+     * To add many values at once in a single pass
+     * @param ascending the values to add, in ascending order
+     */
+    public synchronized void addAll(int[] ascending) {
+        int[] merged = new int[size + ascending.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < size || j < ascending.length) {
+            int next;
+            if (j == ascending.length || (i < size && get(i) <= ascending[j])) {
+                next = get(i++);
+            } else {
+                next = ascending[j++];
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        int keep = Math.min(count, values.length);
+        System.arraycopy(merged, count - keep, values, 0, keep);
+        head = 0;
+        size = keep;
+    }
+
+    /**
+     * @param before only values smaller than this are returned
+     * @param limit the maximum number of values returned
+     * @return the largest values below the bound, in descending order
+     */
+    public synchronized int[] newestBefore(int before, int limit) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (get(middle) < before) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int count = Math.min(limit, low);
+        int[] newest = new int[count];
+        for (int i = 0; i < count; i++) {
+            newest[i] = get(low - 1 - i);
+        }
+        return newest;
+    }
+
+    /**
+     * @return the maximum number of values retained
+     */
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * @return the number of values retained
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the values retained, in ascending order
+     */
+    public synchronized int[] toArray() {
+        int[] copy = new int[size];
+        for (int i = 0; i < size; i++) {
+            copy[i] = get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Drops every value.
+     */
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+        Arrays.fill(values, 0);
+    }
+
+    private int get(int index) {
+        return values[(head + index) % values.length];
+    }
+
+    private void set(int index, int value) {
+        values[(head + index) % values.length] = value;
+    }
+}
@@ -0,0 +1,283 @@
+package Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A bounded, thread-safe cache that evicts the least recently used entry once it is full, with an optional time
+ * to live after which entries are treated as missing.
+ *
+ * Keys are spread by hash over up to 16 segments, each an access-ordered map behind its own lock with an equal
+ * share of the capacity, so reads of different keys rarely wait on each other even though every hit reorders its
+ * segment. Eviction is least recently used within a segment, which approximates it across the whole cache.
+ * Caches of fewer than 32 entries have a single segment and are exact.
+ *
+ * Every invalidation bumps a generation counter. A caller that loads a value after a miss can pass the generation
+ * it saw before loading to {@link #putIfUnchanged(Object, Object, long)}, so a value read before a concurrent
+ * write is not cached after that write has invalidated it.
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LruCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 16;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Segment<K, V>[] segments;
+    /**
+     * Bumped by invalidations while they hold the lock of the segment they change, and read by putIfUnchanged
+     * under the lock of the segment it would change.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxSize the most entries kept before the least recently used is evicted
+     * @param ttlMillis how long an entry stays valid after it is put, 0 for no expiry
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        int count = 1;
+        while (count < MAX_SEGMENTS && count * 2 * MIN_SEGMENT_SIZE <= maxSize) {
+            count *= 2;
+        }
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(maxSize / count + (i < maxSize % count ? 1 : 0), evictions);
+        }
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value, or null if it is absent or expired
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        Entry<V> entry;
+        segment.lock.lock();
+        try {
+            entry = segment.map.get(key);
+            if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.createdAt > ttlNanos) {
+                segment.map.remove(key);
+                expirations.increment();
+                entry = null;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * To get the cached value, or cache and return a new one if there is none. The loader runs under the lock of
+     * the key's segment, so it should be cheap.
+     * @param key the key
+     * @param loader creates the value for a key that is absent or expired
+     * @return the cached or newly created value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            Entry<V> entry = segment.map.get(key);
+            if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.createdAt > ttlNanos) {
+                expirations.increment();
+                entry = null;
+            }
+            if (entry != null) {
+                hits.increment();
+                return entry.value;
+            }
+            misses.increment();
+            V value = loader.apply(key);
+            segment.map.put(key, new Entry<>(value));
+            return value;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * @param key the key
+     * @param value the value to cache
+     */
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            segment.map.put(key, new Entry<>(value));
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Caches the value only if nothing has been invalidated since the given generation was read.
+     * @param key the key
+     * @param value the value to cache
+     * @param expectedGeneration the result of {@link #generation()} taken before the value was loaded
+     */
+    public void putIfUnchanged(K key, V value, long expectedGeneration) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            if (generation.get() == expectedGeneration) {
+                segment.map.put(key, new Entry<>(value));
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current invalidation generation
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Removes the key from the cache.
+     * @param key the key
+     */
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            generation.incrementAndGet();
+            segment.map.remove(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every entry from the cache.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                generation.incrementAndGet();
+                segment.map.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries currently cached
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return a point-in-time snapshot of the cache counters
+     */
+    public Stats getStats() {
+        return new Stats(size(), maxSize, hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
+    }
+
+    /**
+     * One stripe of the cache: an access-ordered map holding at most its share of the capacity, and its lock.
+     */
+    private static final class Segment<K, V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<K, Entry<V>> map;
+
+        Segment(int capacity, LongAdder evictions) {
+            this.map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long createdAt = System.nanoTime();
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * A snapshot of the cache's size and counters.
+     */
+    public static final class Stats {
+        public final int size;
+        public final int maxSize;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long expirations;
+
+        private Stats(int size, int maxSize, long hits, long misses, long evictions, long expirations) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+        }
+
+        /**
+         * @return the fraction of lookups served from the cache
+         */
+        public double hitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "size=" + size +
+                    ", hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", expirations=" + expirations +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package Util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The process-wide registry of metrics, rendered in the Prometheus text exposition format by {@link #scrape()}.
+ *
+ * A metric is identified by its name and a label string such as {@code method="GET",route="/messages"}. Callers on
+ * hot paths should look a metric up once and keep the returned object, since recording on it is lock-free.
+ */
+public class Metrics {
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param name the metric name, which should end in _seconds
+     * @param help a description of the metric
+     * @param labels the label string, empty for none
+     * @return the latency histogram for the name and labels, created on first use
+     */
+    public static LatencyHistogram histogram(String name, String help, String labels) {
+        return (LatencyHistogram) family(name, help, "summary").metrics
+            .computeIfAbsent(labels, key -> new LatencyHistogram());
+    }
+
+    /**
+     * @param name the metric name, which should end in _total
+     * @param help a description of the metric
+     * @param labels the label string, empty for none
+     * @return the counter for the name and labels, created on first use
+     */
+    public static LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) family(name, help, "counter").metrics.computeIfAbsent(labels, key -> new LongAdder());
+    }
+
+    /**
+     * Registers a value that is read at scrape time, replacing any earlier registration for the same name and
+     * labels.
+     * @param name the metric name
+     * @param help a description of the metric
+     * @param type the Prometheus type, gauge or counter
+     * @param labels the label string, empty for none
+     * @param value reads the current value
+     */
+    public static void register(String name, String help, String type, String labels, DoubleSupplier value) {
+        family(name, help, type).metrics.put(labels, value);
+    }
+
+    /**
+     * @param dao the DAO class name
+     * @param method the DAO method name
+     * @return the histogram timing calls to that DAO method
+     */
+    public static LatencyHistogram daoTimer(String dao, String method) {
+        return histogram("dao_call_duration_seconds", "Latency of DAO calls",
+            "dao=\"" + dao + "\",method=\"" + method + "\"");
+    }
+
+    /**
+     * @return every registered metric in the Prometheus text exposition format
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : new TreeMap<>(families).entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            StringBuilder maxima = new StringBuilder();
+            for (Map.Entry<String, Object> metric : new TreeMap<>(family.metrics).entrySet()) {
+                String labels = metric.getKey();
+                Object value = metric.getValue();
+                if (value instanceof LatencyHistogram) {
+                    LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) value).snapshot();
+                    for (double quantile : QUANTILES) {
+                        sample(out, name, join(labels, "quantile=\"" + quantile + "\""),
+                            snapshot.percentileNanos(quantile) / 1e9);
+                    }
+                    sample(out, name + "_sum", labels, snapshot.sumNanos / 1e9);
+                    sample(out, name + "_count", labels, snapshot.count);
+                    sample(maxima, name + "_max", labels, snapshot.maxNanos / 1e9);
+                } else if (value instanceof LongAdder) {
+                    sample(out, name, labels, ((LongAdder) value).sum());
+                } else {
+                    sample(out, name, labels, ((DoubleSupplier) value).getAsDouble());
+                }
+            }
+            if (maxima.length() > 0) {
+                out.append("# HELP ").append(name).append("_max Largest value recorded by ").append(name).append('\n');
+                out.append("# TYPE ").append(name).append("_max gauge\n");
+                out.append(maxima);
+            }
+        }
+        return out.toString();
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String join(String labels, String label) {
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    /**
+     * All metrics sharing one name.
+     */
+    private static final class Family {
+        final String help;
+        final String type;
+        final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps gzip-compressed response bodies by key, each stamped with the version of the data it was built from, so
+ * an unchanged response is compressed once and then served as stored bytes. An entry built from an older version
+ * is simply a miss; the least recently used entries are evicted once the cache is full.
+ */
+public class PrecompressedCache {
+    private final LruCache<String, Entry> entries;
+    private final int level;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries the maximum number of bodies kept
+     * @param level the gzip compression level, 1 (fastest) to 9 (smallest)
+     */
+    public PrecompressedCache(int maxEntries, int level) {
+        this.entries = new LruCache<>(maxEntries, 0);
+        this.level = level;
+    }
+
+    /**
+     * @param key identifies the response
+     * @param version the version of the data the response must reflect
+     * @return the compressed body built from that version, or null if there is none
+     */
+    public byte[] get(String key, long version) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.gzip;
+    }
+
+    /**
+     * To compress a response body and keep it for later requests at the same version
+     * @param key identifies the response
+     * @param version the version of the data the body was built from
+     * @param body the uncompressed body
+     * @return the compressed body
+     */
+    public byte[] put(String key, long version, byte[] body) {
+        byte[] gzip = gzip(body);
+        entries.put(key, new Entry(version, gzip));
+        return gzip;
+    }
+
+    /**
+     * @return the number of requests served from stored bytes
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of requests that had to compress their body
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Entry {
+        final long version;
+        final byte[] gzip;
+
+        Entry(long version, byte[] gzip) {
+            this.version = version;
+            this.gzip = gzip;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package Util;
+
+/**
+ * Thrown by a rate limit check to end a request with 429 Too Many Requests before it reaches its handler.
+ */
+public class RateLimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    /**
+     * @param limiter the rule the request broke
+     * @param waitNanos how long until the request would be allowed
+     */
+    public RateLimitExceededException(String limiter, long waitNanos) {
+        super("Rate limit exceeded: " + limiter);
+        this.retryAfterSeconds = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+    }
+
+    /**
+     * @return the whole number of seconds to send in Retry-After, at least 1
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,129 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets by key, one limiter per rule, so each client gets its own allowance of requests: a steady rate
+ * with room for a burst.
+ *
+ * Each bucket is a single AtomicLong holding the time at which it will be full again (the generic cell rate
+ * algorithm, which behaves exactly like a token bucket), so taking a token is one compare-and-set with no lock.
+ * Buckets live in a ConcurrentHashMap, whose reads take no lock and whose inserts lock only one bin. A full bucket
+ * is the same as a missing one, so buckets that have refilled are swept out every idle interval, keeping memory
+ * in proportion to the clients active recently rather than to every client ever seen.
+ */
+public class RateLimiter {
+    private final String name;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final long sweepNanos;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+    private final LongAdder allowed;
+    private final LongAdder rejected;
+
+    /**
+     * @param name the name the limiter's metrics are labelled with
+     * @param ratePerSecond the number of requests per second each key may make on average
+     * @param burst the number of requests each key may make at once
+     * @param sweepMillis how often buckets that have refilled are dropped
+     */
+    public RateLimiter(String name, double ratePerSecond, int burst, long sweepMillis) {
+        this.name = name;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.sweepNanos = TimeUnit.MILLISECONDS.toNanos(sweepMillis);
+        String labels = "limiter=\"" + name + "\"";
+        this.allowed = Metrics.counter("rate_limit_decisions_total", "Requests allowed or rejected by rate limits",
+            labels + ",decision=\"allowed\"");
+        this.rejected = Metrics.counter("rate_limit_decisions_total", "Requests allowed or rejected by rate limits",
+            labels + ",decision=\"rejected\"");
+        Metrics.register("rate_limit_keys", "Clients with a partly used rate limit bucket", "gauge", labels,
+            buckets::size);
+    }
+
+    /**
+     * To build the limiter for a rule from ratelimit.&lt;name&gt;.rate and ratelimit.&lt;name&gt;.burst
+     * @param name the rule name
+     * @param defaultRate the requests per second if the property is not set
+     * @param defaultBurst the burst if the property is not set
+     * @return the limiter, or null if the rate is set to 0 to turn the rule off
+     */
+    public static RateLimiter configured(String name, double defaultRate, int defaultBurst) {
+        double rate = Double.parseDouble(
+            System.getProperty("ratelimit." + name + ".rate", String.valueOf(defaultRate)));
+        if (rate <= 0) {
+            return null;
+        }
+        return new RateLimiter(name, rate, Integer.getInteger("ratelimit." + name + ".burst", defaultBurst),
+            Long.getLong("ratelimit.sweepMillis", 60000));
+    }
+
+    /**
+     * To take a token from the key's bucket
+     * @param key the client, such as an IP address or an account id
+     * @return 0 if the request is allowed, otherwise how many nanoseconds until it would be
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        sweepIfDue(now);
+        AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long full = bucket.get();
+            long next = Math.max(full, now) + intervalNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                rejected.increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(full, next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * To check the key's bucket without taking a token, for limits charged only after a request has failed
+     * @param key the client, such as an IP address or an account id
+     * @return 0 if the bucket has a token left, otherwise how many nanoseconds until it will
+     */
+    public long peek(String key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        return Math.max(0, Math.max(bucket.get(), now) + intervalNanos - now - burstNanos);
+    }
+
+    /**
+     * @return the rule name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of keys with a bucket that is not full
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Drops the buckets that have refilled, at most once per sweep interval. A request racing the sweep may take
+     * its token from a bucket just dropped, which at worst lets that client one request early.
+     */
+    private void sweepIfDue(long now) {
+        long last = lastSweep.get();
+        if (now - last < sweepNanos || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        buckets.entrySet().removeIf(entry -> entry.getValue().get() <= now);
+    }
+}
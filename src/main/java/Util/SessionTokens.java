@@ -0,0 +1,264 @@
+package Util;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and checks self-verifying session tokens, so a request can prove which account it acts for without a
+ * database lookup.
+ *
+ * A token is the account id, an expiry time and a random token id, followed by an HMAC-SHA256 of those bytes, both
+ * base64url encoded and joined by a dot. Checking one is a MAC over 20 bytes and a comparison. The key comes from
+ * session.secret (base64), or is generated at startup if that is unset, which ends every session on restart.
+ *
+ * Logging out puts the token id in its account's revocation set until the token would have expired anyway. An
+ * account holds at most session.revocations.maxPerAccount ids and all accounts together session.revocations.maxSize.
+ * When a set is full and no id in it has expired, nothing is dropped: instead every token the account was issued so
+ * far is refused, by raising the expiry its tokens must be past, and its ids are forgotten. When the whole set is
+ * full, that happens to the account holding the most ids. A flood of logouts thus ends the sessions of the account
+ * behind it rather than bringing a logged out token back, and never those of every account.
+ */
+public class SessionTokens {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int PAYLOAD_LENGTH = 4 + 8 + 8;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final int maxRevoked;
+    private final int maxRevokedPerAccount;
+    private final ThreadLocal<Mac> macs;
+    private final SecureRandom random = new SecureRandom();
+    /**
+     * The logged out tokens of each account that has any. Changed only in revoke(), read without a lock.
+     */
+    private final Map<Integer, Revocations> revoked = new ConcurrentHashMap<>();
+    /**
+     * The number of token ids in all the accounts' sets.
+     */
+    private volatile int revokedCount;
+    private final LongAdder issued;
+    private final LongAdder rejected;
+    private final LongAdder overflows;
+
+    /**
+     * @param secret the HMAC key
+     * @param ttlSeconds how long a token is valid after it is issued
+     * @param maxRevoked the maximum number of logged out tokens remembered
+     * @param maxRevokedPerAccount the maximum number of logged out tokens remembered for one account
+     */
+    public SessionTokens(byte[] secret, long ttlSeconds, int maxRevoked, int maxRevokedPerAccount) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.maxRevoked = Math.max(1, maxRevoked);
+        this.maxRevokedPerAccount = Math.max(1, maxRevokedPerAccount);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        this.issued = Metrics.counter("session_tokens_issued_total", "Session tokens issued at login", "");
+        this.rejected = Metrics.counter("session_tokens_rejected_total",
+            "Session tokens refused as malformed, forged, expired or revoked", "");
+        this.overflows = Metrics.counter("session_revocation_overflows_total",
+            "Times an account's revocations filled up and every session it was issued until then was ended", "");
+        Metrics.register("session_revocations", "Logged out session tokens remembered until they expire", "gauge",
+            "", () -> revokedCount);
+    }
+
+    /**
+     * @return tokens configured by session.secret, session.ttlSeconds, session.revocations.maxSize and
+     * session.revocations.maxPerAccount
+     */
+    public static SessionTokens configured() {
+        String configured = System.getProperty("session.secret");
+        byte[] secret;
+        if (configured != null) {
+            secret = Base64.getDecoder().decode(configured);
+        } else {
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+        }
+        return new SessionTokens(secret, Long.getLong("session.ttlSeconds", 3600),
+            Integer.getInteger("session.revocations.maxSize", 100000),
+            Integer.getInteger("session.revocations.maxPerAccount", 64));
+    }
+
+    /**
+     * @param account_id the account the token acts for
+     * @return a new token for the account
+     */
+    public String issue(int account_id) {
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_LENGTH);
+        payload.putInt(account_id);
+        Revocations account = revoked.get(account_id);
+        long expires = nowSeconds() + ttlSeconds;
+        payload.putLong(account == null ? expires : Math.max(expires, account.revokedThrough + 1));
+        payload.putLong(random.nextLong());
+        issued.increment();
+        return ENCODER.encodeToString(payload.array()) + "." + ENCODER.encodeToString(sign(payload.array()));
+    }
+
+    /**
+     * @param token a token as sent by a client
+     * @return the account id the token acts for, or -1 if it is malformed, forged, expired or revoked
+     */
+    public int verify(String token) {
+        ByteBuffer payload = check(token);
+        Revocations account = payload == null ? null : revoked.get(payload.getInt(0));
+        if (payload == null || (account != null && (payload.getLong(4) <= account.revokedThrough
+                || account.ids.containsKey(payload.getLong(12))))) {
+            rejected.increment();
+            return -1;
+        }
+        return payload.getInt(0);
+    }
+
+    /**
+     * To log a token out, so it is refused from now on
+     * @param token a token as sent by a client
+     * @return true if the token was valid until now
+     */
+    public synchronized boolean revoke(String token) {
+        ByteBuffer payload = check(token);
+        if (payload == null) {
+            return false;
+        }
+        Revocations account = revoked.computeIfAbsent(payload.getInt(0), id -> new Revocations());
+        long expires = payload.getLong(4);
+        if (expires <= account.revokedThrough) {
+            return true;
+        }
+        if (account.ids.containsKey(payload.getLong(12))) {
+            return false;
+        }
+        long now = nowSeconds();
+        if (account.ids.size() >= maxRevokedPerAccount && dropExpired(account, now) >= maxRevokedPerAccount) {
+            // covers this token too, since it was issued before
+            endSessions(account, now);
+            return true;
+        }
+        if (revokedCount >= maxRevoked) {
+            makeRoom(account, now);
+        }
+        account.ids.put(payload.getLong(12), expires);
+        revokedCount++;
+        return true;
+    }
+
+    /**
+     * @return how long a token is valid after it is issued, in seconds
+     */
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /**
+     * @param token a token as sent by a client
+     * @return its payload if the token is well formed, correctly signed and unexpired, null otherwise
+     */
+    private ByteBuffer check(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (payload.length != PAYLOAD_LENGTH || !MessageDigest.isEqual(sign(payload), signature)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        return buffer.getLong(4) > nowSeconds() ? buffer : null;
+    }
+
+    private byte[] sign(byte[] payload) {
+        return macs.get().doFinal(payload);
+    }
+
+    /**
+     * Drops the ids of tokens that have expired, and accounts with nothing left to refuse. If that frees nothing,
+     * ends the sessions of the account holding the most ids. Called from revoke().
+     * @param revoking the account a token is being revoked for, which is kept
+     */
+    private void makeRoom(Revocations revoking, long now) {
+        Revocations largest = null;
+        for (Iterator<Revocations> accounts = revoked.values().iterator(); accounts.hasNext();) {
+            Revocations account = accounts.next();
+            dropExpired(account, now);
+            if (account != revoking && account.ids.isEmpty() && account.revokedThrough <= now) {
+                accounts.remove();
+            } else if (largest == null || account.ids.size() > largest.ids.size()) {
+                largest = account;
+            }
+        }
+        if (revokedCount >= maxRevoked && largest != null) {
+            endSessions(largest, now);
+        }
+    }
+
+    /**
+     * @return the number of ids the account still holds
+     */
+    private int dropExpired(Revocations account, long now) {
+        int before = account.ids.size();
+        account.ids.values().removeIf(expires -> expires <= now);
+        revokedCount -= before - account.ids.size();
+        return account.ids.size();
+    }
+
+    /**
+     * Refuses every token the account has been issued so far and forgets the ids that covers.
+     */
+    private void endSessions(Revocations account, long now) {
+        long through = Math.max(now + ttlSeconds, account.revokedThrough + 1);
+        account.revokedThrough = through;
+        int before = account.ids.size();
+        // Only ids the new bound covers are forgotten, so a token issued and revoked meanwhile stays revoked
+        account.ids.values().removeIf(expires -> expires <= through);
+        revokedCount -= before - account.ids.size();
+        overflows.increment();
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * The logged out tokens of one account.
+     */
+    private static final class Revocations {
+        /**
+         * Token ids that have been logged out, with the epoch second their token expires.
+         */
+        final Map<Long, Long> ids = new ConcurrentHashMap<>();
+        /**
+         * The account's tokens expiring at or before this epoch second are refused, whether or not their id is in
+         * the set.
+         */
+        volatile long revokedThrough;
+    }
+}
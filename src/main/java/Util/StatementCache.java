@@ -0,0 +1,234 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The prepared statements of one physical connection, kept open across borrows and keyed by their SQL text, so a
+ * query the DAOs run on every request is parsed and planned once per connection rather than once per call.
+ *
+ * A borrower gets a proxy whose close() hands the statement back instead of closing it: any result sets it left
+ * open are closed, its parameters are cleared and any fetch size, row limit or timeout it changed is put back. The
+ * least recently used statement is closed once more than the maximum are cached. A connection is used by one
+ * borrower at a time, so nothing here is synchronized; a statement already in use is not handed out twice, and a
+ * second prepare of the same SQL gets a fresh statement of its own.
+ */
+class StatementCache {
+    private final Connection physical;
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final Map<String, CachedStatement> statements;
+    /**
+     * Statements prepared while the cached statement for the same SQL was in use, closed when handed back.
+     */
+    private final List<CachedStatement> uncached = new ArrayList<>();
+
+    /**
+     * @param physical the connection the statements belong to
+     * @param maxSize the maximum number of statements kept open
+     * @param hits counts prepares answered from the cache
+     * @param misses counts prepares that had to be parsed
+     * @param evictions counts statements closed to make room
+     */
+    StatementCache(Connection physical, int maxSize, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * To prepare a statement, from the cache when possible
+     * @param owner the pooled connection the borrower holds, returned by the statement's getConnection()
+     * @param sql the SQL text
+     * @param autoGeneratedKeys the generated keys flag, or null if prepareStatement was called without one
+     * @return a statement whose close() hands it back to the cache
+     */
+    PreparedStatement prepare(Connection owner, String sql, Integer autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == null ? sql : autoGeneratedKeys + ":" + sql;
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            hits.increment();
+        } else if (cached == null) {
+            misses.increment();
+            cached = new CachedStatement(owner, autoGeneratedKeys == null
+                ? physical.prepareStatement(sql) : physical.prepareStatement(sql, autoGeneratedKeys));
+            statements.put(key, cached);
+            evictIfFull();
+        } else {
+            // nested use of the same SQL on one connection; this one is not cached
+            misses.increment();
+            cached = new CachedStatement(owner, autoGeneratedKeys == null
+                ? physical.prepareStatement(sql) : physical.prepareStatement(sql, autoGeneratedKeys));
+            cached.uncached = true;
+            uncached.add(cached);
+        }
+        cached.checkOut(owner);
+        return cached.proxy;
+    }
+
+    /**
+     * Hands back every statement the borrower still holds, as if it had closed them.
+     * @return false if a statement could not be reset and the connection should not be reused
+     */
+    boolean returnAll() {
+        boolean clean = true;
+        for (CachedStatement cached : new ArrayList<>(statements.values())) {
+            if (cached.inUse) {
+                clean &= cached.checkIn();
+            }
+        }
+        for (CachedStatement cached : uncached) {
+            if (cached.inUse) {
+                cached.checkIn();
+            }
+        }
+        uncached.clear();
+        return clean;
+    }
+
+    /**
+     * @return the number of statements cached
+     */
+    int size() {
+        return statements.size();
+    }
+
+    private void evictIfFull() {
+        Iterator<CachedStatement> it = statements.values().iterator();
+        while (statements.size() > maxSize && it.hasNext()) {
+            CachedStatement eldest = it.next();
+            if (!eldest.inUse) {
+                it.remove();
+                evictions.increment();
+                eldest.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * One cached statement and the proxy borrowers see. Result sets it produces are tracked so they can all be
+     * closed when it is handed back.
+     */
+    private final class CachedStatement implements InvocationHandler {
+        final PreparedStatement statement;
+        final PreparedStatement proxy;
+        final List<ResultSet> resultSets = new ArrayList<>();
+        final int defaultFetchSize;
+        final int defaultMaxRows;
+        final int defaultQueryTimeout;
+        Connection owner;
+        boolean inUse;
+        boolean uncached;
+        boolean settingsChanged;
+
+        CachedStatement(Connection owner, PreparedStatement statement) throws SQLException {
+            this.owner = owner;
+            this.statement = statement;
+            this.defaultFetchSize = statement.getFetchSize();
+            this.defaultMaxRows = statement.getMaxRows();
+            this.defaultQueryTimeout = statement.getQueryTimeout();
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        void checkOut(Connection owner) {
+            this.owner = owner;
+            inUse = true;
+        }
+
+        /**
+         * @return false if the statement could not be reset, in which case it has been closed
+         */
+        boolean checkIn() {
+            inUse = false;
+            try {
+                for (ResultSet resultSet : resultSets) {
+                    resultSet.close();
+                }
+                resultSets.clear();
+                if (uncached) {
+                    statement.close();
+                    return true;
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+                if (settingsChanged) {
+                    statement.setFetchSize(defaultFetchSize);
+                    statement.setMaxRows(defaultMaxRows);
+                    statement.setQueryTimeout(defaultQueryTimeout);
+                    settingsChanged = false;
+                }
+                return true;
+            } catch (SQLException e) {
+                statements.values().remove(this);
+                closeQuietly();
+                return false;
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        checkIn();
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return "CachedStatement[" + statement + (inUse ? "]" : ", returned]");
+                case "setFetchSize":
+                case "setMaxRows":
+                case "setQueryTimeout":
+                    settingsChanged = true;
+                    break;
+                default:
+                    break;
+            }
+            if (!inUse) {
+                throw new SQLException("Statement has already been closed");
+            }
+            try {
+                Object result = method.invoke(statement, args);
+                if (result instanceof ResultSet) {
+                    resultSets.add((ResultSet) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,3 +1,4 @@
+drop table if exists follow;
 drop table if exists message;
 drop table if exists account;
 create table account (
@@ -12,6 +13,17 @@ create table message (
     time_posted_epoch bigint,
     foreign key (posted_by) references  account(account_id)
 );
+-- newest-first timeline of each account, used by the paginated GET /accounts/{account_id}/messages
+create index message_posted_by_time_idx on message(posted_by, time_posted_epoch desc, message_id desc);
+-- who follows whom; the primary key serves "who does X follow", the index "who follows X"
+create table follow (
+    follower_id int,
+    followee_id int,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
+create index follow_followee_idx on follow(followee_id, follower_id);
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
@@ -0,0 +1,41 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.BloomFilter;
+
+public class BloomFilterTest {
+
+    /**
+     * Every added string is reported as possibly present.
+     */
+    @Test
+    public void noFalseNegatives() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("user" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(filter.mightContain("user" + i));
+        }
+        Assert.assertEquals(1000, filter.getStats().insertions);
+    }
+
+    /**
+     * Strings that were never added are mostly reported as absent, near the configured rate.
+     */
+    @Test
+    public void falsePositiveRateNearTarget() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("user" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("stranger" + i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 300);
+        Assert.assertTrue(filter.getStats().expectedFpp < 0.02);
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<byte[]> get(String path, boolean gzip) throws IOException, InterruptedException {
+        return get(path, gzip ? "gzip" : null, null);
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding, String ifNoneMatch)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private void postMessages(int count) throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"posted_by\":1, \"message_text\": \"message number ")
+                    .append(i).append("\", \"time_posted_epoch\": ").append(1669947793 + i).append("}");
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body.append("]").toString()))
+                .build();
+        webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private long precompressedHits() throws IOException, InterruptedException {
+        String metrics = new String(get("/metrics", false).body());
+        Matcher matcher = Pattern.compile("http_precompressed_hits_total (\\d+)").matcher(metrics);
+        Assert.assertTrue(matcher.find());
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**
+     * A large message list is gzipped for clients that accept it, decompresses to the plain response, and is
+     * served from stored bytes until a message changes.
+     */
+    @Test
+    public void largeListIsGzippedAndReused() throws IOException, InterruptedException {
+        postMessages(200);
+        HttpResponse<byte[]> plain = get("/messages", false);
+        Assert.assertFalse(plain.headers().firstValue("Content-Encoding").isPresent());
+        List<Message> expected = objectMapper.readValue(plain.body(), new TypeReference<List<Message>>() { });
+        Assert.assertEquals(201, expected.size());
+
+        long hits = precompressedHits();
+        HttpResponse<byte[]> first = get("/messages", true);
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals("gzip", first.headers().firstValue("Content-Encoding").orElse(null));
+        Assert.assertTrue(first.body().length < plain.body().length);
+        List<Message> actual = objectMapper.readValue(new GZIPInputStream(new ByteArrayInputStream(first.body())),
+                new TypeReference<List<Message>>() { });
+        Assert.assertEquals(expected, actual);
+
+        HttpResponse<byte[]> second = get("/messages", true);
+        Assert.assertArrayEquals(first.body(), second.body());
+        Assert.assertEquals(hits + 1, precompressedHits());
+
+        postMessages(1);
+        HttpResponse<byte[]> changed = get("/messages", true);
+        List<Message> updated = objectMapper.readValue(new GZIPInputStream(new ByteArrayInputStream(changed.body())),
+                new TypeReference<List<Message>>() { });
+        Assert.assertEquals(202, updated.size());
+        Assert.assertEquals(hits + 1, precompressedHits());
+    }
+
+    /**
+     * A response under the minimum size is sent uncompressed even to clients that accept gzip.
+     */
+    @Test
+    public void smallResponseIsNotCompressed() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = get("/messages/1", true);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("Content-Encoding").isPresent());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * gzip with a q-value of 0 is refused, and the gzip and identity bodies of a list carry different entity tags,
+     * each revalidating only its own variant.
+     */
+    @Test
+    public void gzipVariantHasItsOwnTag() throws IOException, InterruptedException {
+        postMessages(200);
+        HttpResponse<byte[]> refused = get("/messages", "gzip;q=0, identity", null);
+        Assert.assertFalse(refused.headers().firstValue("Content-Encoding").isPresent());
+        String plainTag = refused.headers().firstValue("ETag").orElse(null);
+
+        HttpResponse<byte[]> gzipped = get("/messages", "identity;q=0.5, gzip;q=0.8", null);
+        Assert.assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElse(null));
+        String gzipTag = gzipped.headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(plainTag);
+        Assert.assertNotEquals(plainTag, gzipTag);
+
+        Assert.assertEquals(304, get("/messages", "gzip", gzipTag).statusCode());
+        Assert.assertEquals(200, get("/messages", "gzip", plainTag).statusCode());
+        Assert.assertEquals(304, get("/messages", null, plainTag).statusCode());
+    }
+}
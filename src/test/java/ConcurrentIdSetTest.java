@@ -0,0 +1,55 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.ConcurrentIdSet;
+
+public class ConcurrentIdSetTest {
+
+    /**
+     * Random adds and removes, clustered in a few ranges with wide empty gaps between them, leave nextId walking
+     * exactly the ids a TreeSet holds, in order, and still do once whole ranges are emptied again.
+     */
+    @Test
+    public void walksLikeTreeSet() {
+        ConcurrentIdSet set = new ConcurrentIdSet();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(42);
+        int[] ranges = { 0, 5000, 300000, 2000000 };
+        for (int i = 0; i < 200_000; i++) {
+            int id = ranges[random.nextInt(ranges.length)] + random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(id);
+                set.remove(id);
+            } else {
+                expected.add(id);
+                set.add(id);
+            }
+        }
+        Assert.assertEquals(new ArrayList<>(expected), walk(set));
+
+        for (int id = 0; id < 310000; id++) {
+            expected.remove(id);
+            set.remove(id);
+        }
+        Assert.assertEquals(new ArrayList<>(expected), walk(set));
+        for (int id : expected) {
+            Assert.assertTrue(set.contains(id));
+        }
+        Assert.assertFalse(set.contains(42));
+        Assert.assertEquals(-1, set.nextId(expected.last()));
+        Assert.assertEquals(-1, set.nextId(Integer.MAX_VALUE));
+    }
+
+    private static List<Integer> walk(ConcurrentIdSet set) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = set.nextId(-1); id >= 0; id = set.nextId(id)) {
+            ids.add(id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * A message polled with its own ETag is not sent again until its text changes.
+     */
+    @Test
+    public void messageNotModifiedUntilUpdated() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages/1", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(etag);
+
+        HttpResponse<String> poll = get("/messages/1", etag);
+        Assert.assertEquals(304, poll.statusCode());
+        Assert.assertEquals("", poll.body());
+        Assert.assertEquals(etag, poll.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals(304, get("/messages/1", "W/" + etag).statusCode());
+
+        send("PATCH", "/messages/1", "{\"message_text\": \"changed\"}");
+        HttpResponse<String> changed = get("/messages/1", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertNotEquals(etag, changed.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * The message lists are not sent again until a message is created, and the tag changes when one is.
+     */
+    @Test
+    public void listsNotModifiedUntilMessageCreated() throws IOException, InterruptedException {
+        String allTag = get("/messages", null).headers().firstValue("ETag").orElse(null);
+        String userTag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(allTag);
+        Assert.assertEquals(304, get("/messages", allTag).statusCode());
+        Assert.assertEquals(304, get("/accounts/1/messages", userTag).statusCode());
+        Assert.assertEquals(200, get("/messages", "\"other\"").statusCode());
+
+        send("POST", "/messages",
+                "{\"posted_by\":1, \"message_text\": \"new\", \"time_posted_epoch\": 1669947793}");
+        HttpResponse<String> changed = get("/messages", allTag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertNotEquals(allTag, changed.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals(200, get("/accounts/1/messages", userTag).statusCode());
+    }
+}
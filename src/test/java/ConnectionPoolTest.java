@@ -0,0 +1,123 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    JdbcDataSource dataSource;
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a small pool over a private in-memory database.
+     */
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool(dataSource, 0, 2, 200, 0, 60000, 1);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Closing a borrowed connection returns the physical connection to the pool for reuse.
+     */
+    @Test
+    public void closedConnectionIsReused() throws SQLException {
+        Connection first = pool.borrow();
+        Assert.assertEquals(1, pool.getStats().active);
+        first.close();
+        Assert.assertTrue(first.isClosed());
+        Assert.assertEquals(0, pool.getStats().active);
+        Assert.assertEquals(1, pool.getStats().idle);
+
+        Connection second = pool.borrow();
+        second.close();
+        Assert.assertEquals(1, pool.getStats().created);
+        Assert.assertEquals(2, pool.getStats().borrows);
+    }
+
+    /**
+     * Borrowing past the maximum size waits for the borrow timeout and then fails.
+     */
+    @Test
+    public void exhaustedPoolTimesOut() throws SQLException {
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        try {
+            pool.borrow();
+            Assert.fail("expected the third borrow to time out");
+        } catch (SQLTimeoutException e) {
+            Assert.assertEquals(1, pool.getStats().timeouts);
+        }
+        first.close();
+        pool.borrow().close();
+        second.close();
+        Assert.assertEquals(2, pool.getStats().total);
+    }
+
+    /**
+     * A returned connection can no longer be used, and its statements are closed.
+     */
+    @Test
+    public void returnedConnectionRejectsUse() throws SQLException {
+        Connection conn = pool.borrow();
+        Statement stmt = conn.createStatement();
+        conn.close();
+        Assert.assertTrue(stmt.isClosed());
+        try {
+            conn.createStatement();
+            Assert.fail("expected a returned connection to reject use");
+        } catch (SQLException e) {
+            Assert.assertTrue(e.getMessage().contains("returned"));
+        }
+    }
+
+    /**
+     * With a statement cache, a statement prepared again on a later borrow is reused, and handing it back closes
+     * the result sets it left open.
+     */
+    @Test
+    public void preparedStatementIsCachedAcrossBorrows() throws SQLException {
+        ConnectionPool cachingPool = new ConnectionPool(dataSource, 0, 1, 200, 0, 60000, 1, 4);
+        try {
+            ResultSet leftOpen;
+            try (Connection conn = cachingPool.borrow()) {
+                PreparedStatement pstmt = conn.prepareStatement("SELECT ? + 1");
+                pstmt.setInt(1, 1);
+                leftOpen = pstmt.executeQuery();
+                Assert.assertSame(conn, pstmt.getConnection());
+            }
+            Assert.assertTrue(leftOpen.isClosed());
+            try (Connection conn = cachingPool.borrow();
+                    PreparedStatement pstmt = conn.prepareStatement("SELECT ? + 1")) {
+                pstmt.setInt(1, 2);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    Assert.assertTrue(rs.next());
+                    Assert.assertEquals(3, rs.getInt(1));
+                }
+            }
+            ConnectionPool.Stats stats = cachingPool.getStats();
+            Assert.assertEquals(1, stats.statementCacheMisses);
+            Assert.assertEquals(1, stats.statementCacheHits);
+            Assert.assertEquals(1, stats.cachedStatements);
+        } finally {
+            cachingPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessagesBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> postBatch(String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with valid and invalid messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message, the valid ones created with consecutive ids
+     */
+    @Test
+    public void createMessagesReportsEachItem() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBatch("[" +
+                "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947793}," +
+                "{\"posted_by\":99, \"message_text\": \"nobody\", \"time_posted_epoch\": 1669947794}," +
+                "{\"posted_by\":1, \"message_text\": \" \", \"time_posted_epoch\": 1669947795}," +
+                "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947796}]");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<MessageResult> results = objectMapper.readValue(response.body(),
+                new TypeReference<List<MessageResult>>() { });
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(200, results.get(0).getStatus());
+        Assert.assertEquals(new Message(2, 1, "first", 1669947793), results.get(0).getMessage());
+        Assert.assertEquals(400, results.get(1).getStatus());
+        Assert.assertNull(results.get(1).getMessage());
+        Assert.assertEquals(400, results.get(2).getStatus());
+        Assert.assertEquals(200, results.get(3).getStatus());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947796), results.get(3).getMessage());
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(i, results.get(i).getIndex());
+        }
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947796),
+                objectMapper.readValue(getResponse.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a body that is not an array
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createMessagesRejectsNonArray() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBatch("{\"posted_by\":1, \"message_text\": \"first\"}");
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.DbExecutor;
+
+public class DbExecutorTest {
+    DbExecutor executor;
+
+    /**
+     * Before every test, create an executor with one thread and room for one waiting task.
+     */
+    @Before
+    public void setUp() {
+        executor = new DbExecutor(1, 1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * A task's result completes its future, on an executor thread.
+     */
+    @Test
+    public void taskResultCompletesFuture() throws Exception {
+        CompletableFuture<String> future = executor.supply(() -> Thread.currentThread().getName());
+        Assert.assertTrue(future.get(5, TimeUnit.SECONDS).startsWith("db-executor-"));
+    }
+
+    /**
+     * An exception thrown by a task completes its future exceptionally.
+     */
+    @Test
+    public void taskExceptionCompletesFutureExceptionally() throws Exception {
+        CompletableFuture<Object> future = executor.supply(() -> {
+            throw new IllegalStateException("boom");
+        });
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("expected the task's exception");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * Once the thread is busy and the queue is full, further tasks are refused at once instead of queued.
+     */
+    @Test
+    public void fullQueueRejectsTasks() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Integer> running = executor.supply(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Integer> queued = executor.supply(() -> 2);
+        Assert.assertEquals(1, executor.getQueueDepth());
+
+        CompletableFuture<Integer> refused = executor.supply(() -> 3);
+        Assert.assertTrue(refused.isCompletedExceptionally());
+        Assert.assertEquals(1, executor.getRejectedCount());
+        try {
+            refused.get();
+            Assert.fail("expected the task to be refused");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        release.countDown();
+        Assert.assertEquals(1, (int) running.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, (int) queued.get(5, TimeUnit.SECONDS));
+    }
+}
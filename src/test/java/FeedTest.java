@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class FeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Accounts 2 and 3 are registered next to the test user.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        send("POST", "/register", "{\"username\": \"testuser2\", \"password\": \"password\"}");
+        send("POST", "/register", "{\"username\": \"testuser3\", \"password\": \"password\"}");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("feed.fanoutThreshold");
+        System.clearProperty("feed.maxBuffers");
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private int post(int posted_by, String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "/messages", "{\"posted_by\":" + posted_by
+                + ", \"message_text\": \"" + text + "\", \"time_posted_epoch\": 1669947792}");
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class).getMessage_id();
+    }
+
+    private MessagePage feed(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", path, null);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessagePage.class);
+    }
+
+    private static List<Integer> ids(MessagePage page) {
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : page.getMessages()) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    /**
+     * The feed holds the messages of followed accounts only, newest first, including those posted before the
+     * follow and those posted after the feed was first read.
+     */
+    @Test
+    public void feedShowsFollowedAccountsNewestFirst() throws IOException, InterruptedException {
+        int before = post(2, "posted before the follow");
+        post(3, "not followed");
+        Assert.assertEquals(200, send("POST", "/accounts/1/following/2", null).statusCode());
+        Assert.assertEquals(List.of(before), ids(feed("/accounts/1/feed")));
+
+        int after = post(2, "posted after the feed was read");
+        post(1, "my own message");
+        Assert.assertEquals(List.of(after, before), ids(feed("/accounts/1/feed")));
+        Assert.assertEquals("posted after the feed was read",
+                feed("/accounts/1/feed").getMessages().get(0).getMessage_text());
+    }
+
+    /**
+     * Pages follow each other through the cursor without gaps or repeats.
+     */
+    @Test
+    public void feedPagesWithCursor() throws IOException, InterruptedException {
+        send("POST", "/accounts/1/following/2", null);
+        send("POST", "/accounts/1/following/3", null);
+        List<Integer> posted = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            posted.add(0, post(2 + i % 2, "message " + i));
+        }
+
+        MessagePage first = feed("/accounts/1/feed?limit=2");
+        Assert.assertEquals(posted.subList(0, 2), ids(first));
+        MessagePage second = feed("/accounts/1/feed?limit=2&before=" + first.getNext_cursor());
+        Assert.assertEquals(posted.subList(2, 4), ids(second));
+        MessagePage third = feed("/accounts/1/feed?limit=2&before=" + second.getNext_cursor());
+        Assert.assertEquals(posted.subList(4, 5), ids(third));
+        Assert.assertNull(third.getNext_cursor());
+    }
+
+    /**
+     * Unfollowing removes the account's messages from the feed, and deleted messages drop out of it.
+     */
+    @Test
+    public void feedFollowsUnfollowsAndDeletes() throws IOException, InterruptedException {
+        send("POST", "/accounts/1/following/2", null);
+        send("POST", "/accounts/1/following/3", null);
+        int fromTwo = post(2, "from two");
+        int fromThree = post(3, "from three");
+        Assert.assertEquals(List.of(fromThree, fromTwo), ids(feed("/accounts/1/feed")));
+
+        send("DELETE", "/accounts/1/following/3", null);
+        Assert.assertEquals(List.of(fromTwo), ids(feed("/accounts/1/feed")));
+
+        send("DELETE", "/messages/" + fromTwo, null);
+        Assert.assertEquals(List.of(), ids(feed("/accounts/1/feed")));
+    }
+
+    /**
+     * Accounts with more followers than the fan-out threshold are merged into feeds on read, alongside accounts
+     * whose messages were pushed on write.
+     */
+    @Test
+    public void feedMergesHighFollowerAccountsOnRead() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("feed.fanoutThreshold", "1");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        send("POST", "/accounts/1/following/2", null);
+        send("POST", "/accounts/3/following/2", null);
+        send("POST", "/accounts/1/following/3", null);
+        feed("/accounts/1/feed");
+        int first = post(2, "from a popular account");
+        int second = post(3, "from a quiet account");
+        int third = post(2, "from a popular account again");
+
+        Assert.assertEquals(List.of(third, second, first), ids(feed("/accounts/1/feed")));
+        Assert.assertEquals(List.of(third, first), ids(feed("/accounts/3/feed")));
+        Assert.assertTrue(send("GET", "/metrics", null).body().contains("feed_read_fanout_accounts 1"));
+    }
+
+    /**
+     * With room for one buffer, reading another account's feed drops the first, which is refilled the same when it
+     * is read again.
+     */
+    @Test
+    public void feedBuffersAreBounded() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("feed.maxBuffers", "1");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        send("POST", "/accounts/1/following/2", null);
+        send("POST", "/accounts/3/following/2", null);
+        int first = post(2, "before any feed was read");
+        Assert.assertEquals(List.of(first), ids(feed("/accounts/1/feed")));
+        Assert.assertEquals(List.of(first), ids(feed("/accounts/3/feed")));
+        int second = post(2, "after both feeds were read");
+        Assert.assertEquals(List.of(second, first), ids(feed("/accounts/1/feed")));
+        Assert.assertEquals(List.of(second, first), ids(feed("/accounts/3/feed")));
+        Assert.assertFalse(send("GET", "/metrics", null).body().contains("feed_buffer_evictions_total 0"));
+    }
+
+    /**
+     * A malformed cursor or limit is rejected.
+     */
+    @Test
+    public void feedRejectsBadParameters() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("GET", "/accounts/1/feed?before=not-a-cursor", null).statusCode());
+        Assert.assertEquals(400, send("GET", "/accounts/1/feed?limit=0", null).statusCode());
+        Assert.assertEquals(400, send("GET", "/accounts/x/feed", null).statusCode());
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.FollowDao;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class FollowTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Accounts 2 and 3 are registered next to the test user.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        send("POST", "/register", "{\"username\": \"testuser2\", \"password\": \"password\"}");
+        send("POST", "/register", "{\"username\": \"testuser3\", \"password\": \"password\"}");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private int[] ids(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", path, null);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), int[].class);
+    }
+
+    /**
+     * Follows show up in both directions, repeating one changes nothing, and unfollowing removes it.
+     */
+    @Test
+    public void followAndUnfollow() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "/accounts/1/following/2", null).statusCode());
+        Assert.assertEquals(200, send("POST", "/accounts/3/following/2", null).statusCode());
+        Assert.assertEquals(200, send("POST", "/accounts/1/following/2", null).statusCode());
+        Assert.assertEquals(200, send("POST", "/accounts/1/following/3", null).statusCode());
+
+        Assert.assertArrayEquals(new int[] { 1, 3 }, ids("/accounts/2/followers"));
+        Assert.assertArrayEquals(new int[] { 2, 3 }, ids("/accounts/1/following"));
+        Assert.assertArrayEquals(new int[0], ids("/accounts/2/following"));
+
+        Assert.assertEquals(200, send("DELETE", "/accounts/1/following/2", null).statusCode());
+        Assert.assertEquals(200, send("DELETE", "/accounts/1/following/2", null).statusCode());
+        Assert.assertArrayEquals(new int[] { 3 }, ids("/accounts/2/followers"));
+        Assert.assertArrayEquals(new int[] { 3 }, ids("/accounts/1/following"));
+    }
+
+    /**
+     * Following yourself or an account that does not exist is rejected.
+     */
+    @Test
+    public void invalidFollowsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("POST", "/accounts/1/following/1", null).statusCode());
+        Assert.assertEquals(400, send("POST", "/accounts/1/following/99", null).statusCode());
+        Assert.assertEquals(400, send("POST", "/accounts/99/following/1", null).statusCode());
+        Assert.assertEquals(400, send("POST", "/accounts/x/following/1", null).statusCode());
+        Assert.assertArrayEquals(new int[0], ids("/accounts/1/following"));
+    }
+
+    /**
+     * A new DAO loads every follow from the table.
+     */
+    @Test
+    public void graphLoadedFromTable() throws IOException, InterruptedException {
+        send("POST", "/accounts/2/following/1", null);
+        send("POST", "/accounts/3/following/1", null);
+        FollowDao followDao = new FollowDao();
+        Assert.assertTrue(followDao.isFollowing(2, 1));
+        Assert.assertFalse(followDao.isFollowing(1, 2));
+        Assert.assertEquals(2, followDao.getFollowerCount(1));
+        Assert.assertEquals(1, followDao.getFollowingCount(3));
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.GroupCommitWriter;
+import DAO.InMemoryMessageStore;
+import DAO.MessageDao;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class GroupCommitWriterTest {
+    MessageDao messageDao;
+    GroupCommitWriter writer;
+
+    /**
+     * Before every test, reset the database and start a writer with a generous window so concurrent saves
+     * share batches.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDao = new MessageDao();
+        writer = new GroupCommitWriter(messageDao, 20000, 16);
+    }
+
+    @After
+    public void tearDown() {
+        writer.close();
+    }
+
+    /**
+     * Concurrent saves each get back their own generated message_id, and every message is persisted.
+     */
+    @Test
+    public void concurrentSavesGetDistinctIds() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Message message = new Message(1, "batched message " + i, 1669947792);
+            results.add(callers.submit(() -> writer.save(message)));
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Future<Message> result : results) {
+            Message saved = result.get();
+            Assert.assertTrue(saved.getMessage_id() > 1);
+            ids.add(saved.getMessage_id());
+            Assert.assertEquals(saved, messageDao.getMessageById(saved.getMessage_id()));
+        }
+        callers.shutdown();
+        Assert.assertEquals(40, ids.size());
+        Assert.assertEquals(41, messageDao.getAll().size());
+    }
+
+    /**
+     * A message that violates a constraint fails on its own without failing the rest of its batch.
+     */
+    @Test
+    public void badMessageDoesNotFailBatch() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        Future<Message> bad = callers.submit(() -> writer.save(new Message(99, "no such poster", 1669947792)));
+        Future<Message> good = callers.submit(() -> writer.save(new Message(1, "valid poster", 1669947792)));
+        Assert.assertEquals(0, bad.get().getMessage_id());
+        Assert.assertTrue(good.get().getMessage_id() > 1);
+        callers.shutdown();
+    }
+
+    /**
+     * A batch insert that throws instead of rejecting the batch still has each message retried on its own, and
+     * saves keep working after the writer is closed.
+     */
+    @Test
+    public void failingBatchFallsBackToSingleSaves() throws Exception {
+        InMemoryMessageStore store = new InMemoryMessageStore() {
+            @Override
+            public List<Message> saveAll(List<Message> messages) {
+                throw new IllegalStateException("batch insert failed");
+            }
+        };
+        GroupCommitWriter failing = new GroupCommitWriter(store, 20000, 16);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        List<Future<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Message message = new Message(1, "retried message " + i, 1669947792);
+            results.add(callers.submit(() -> failing.save(message)));
+        }
+        for (Future<Message> result : results) {
+            Assert.assertTrue(result.get().getMessage_id() > 0);
+        }
+        callers.shutdown();
+        failing.close();
+        Assert.assertTrue(failing.save(new Message(1, "after close", 1669947792)).getMessage_id() > 0);
+        Assert.assertEquals(9, store.getAll().size());
+    }
+
+    /**
+     * Closing the writer returns only once the messages queued in the open window have been saved, so the store
+     * can be closed straight after.
+     */
+    @Test
+    public void closeFlushesQueuedWrites() throws Exception {
+        InMemoryMessageStore store = new InMemoryMessageStore();
+        GroupCommitWriter waiting = new GroupCommitWriter(store, 10000000, 64);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Message message = new Message(1, "queued message " + i, 1669947792);
+            results.add(callers.submit(() -> waiting.save(message)));
+        }
+        Thread.sleep(500);
+        waiting.close();
+        Assert.assertEquals(8, store.getAll().size());
+        for (Future<Message> result : results) {
+            Assert.assertTrue(result.get().getMessage_id() > 0);
+        }
+        callers.shutdown();
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryMessageStore;
+import Model.Message;
+import io.javalin.Javalin;
+
+public class InMemoryStorageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, restart the Javalin app on the in-memory storage engine, which starts out empty.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("storage.engine", "memory");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("storage.engine");
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Accounts, messages and follows all work without the database, and nothing from it shows up.
+     */
+    @Test
+    public void apiWorksWithoutDatabase() throws IOException, InterruptedException {
+        Assert.assertEquals(401, send("POST", "/login", "{\"username\": \"testuser1\", \"password\": \"password\"}")
+                .statusCode());
+        Assert.assertEquals("[]", send("GET", "/messages", null).body());
+
+        Assert.assertTrue(send("POST", "/register", "{\"username\": \"alice\", \"password\": \"password\"}").body()
+                .contains("\"account_id\":1"));
+        Assert.assertTrue(send("POST", "/register", "{\"username\": \"bob\", \"password\": \"password\"}").body()
+                .contains("\"account_id\":2"));
+        Assert.assertEquals(400, send("POST", "/register", "{\"username\": \"bob\", \"password\": \"password\"}")
+                .statusCode());
+        Assert.assertEquals(200, send("POST", "/login", "{\"username\": \"bob\", \"password\": \"password\"}")
+                .statusCode());
+
+        String posted = send("POST", "/messages",
+                "{\"posted_by\":1, \"message_text\": \"hello memory\", \"time_posted_epoch\": 1669947792}").body();
+        Assert.assertTrue(posted.contains("\"message_id\":1"));
+        Assert.assertEquals(400, send("POST", "/messages",
+                "{\"posted_by\":9, \"message_text\": \"nobody\", \"time_posted_epoch\": 1669947792}").statusCode());
+        Assert.assertTrue(send("PATCH", "/messages/1", "{\"message_text\": \"edited\"}").body().contains("edited"));
+        Assert.assertTrue(send("GET", "/accounts/1/messages", null).body().contains("edited"));
+        Assert.assertTrue(send("GET", "/messages/search?q=edited", null).body().contains("\"message_id\":1"));
+
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1", null).statusCode());
+        Assert.assertTrue(send("GET", "/accounts/2/feed", null).body().contains("edited"));
+
+        Assert.assertTrue(send("DELETE", "/messages/1", null).body().contains("edited"));
+        Assert.assertEquals("", send("GET", "/messages/1", null).body());
+        Assert.assertEquals("[]", send("GET", "/messages", null).body());
+    }
+
+    /**
+     * Concurrent saves get distinct, dense ids, and every message lands in its poster's index.
+     */
+    @Test
+    public void concurrentSavesGetDistinctIds() throws Exception {
+        InMemoryMessageStore store = new InMemoryMessageStore();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int poster = 1 + t % 2;
+            writers.add(threads.submit(() -> {
+                for (int i = 0; i < 2500; i++) {
+                    store.save(new Message(poster, "message " + i, 1669947792L + i));
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        threads.shutdown();
+
+        Set<Integer> ids = new HashSet<>();
+        for (Message message : store.getAll()) {
+            ids.add(message.getMessage_id());
+        }
+        Assert.assertEquals(20000, ids.size());
+        Assert.assertTrue(ids.contains(1) && ids.contains(20000));
+        Assert.assertEquals(10000, store.getMessagesByUser(1).size());
+        Assert.assertEquals(5, store.getTimelinePage(2, null, 5).size());
+        Assert.assertArrayEquals(new int[] { 19999, 20000 }, store.getNewestIdsByPosters(new int[] { 1, 2 }, 2));
+    }
+
+    /**
+     * Timeline pages follow time_posted_epoch rather than id order, continue from the cursor, tie-break equal times
+     * by id and leave out deleted messages.
+     */
+    @Test
+    public void timelinePagesFollowTime() {
+        InMemoryMessageStore store = new InMemoryMessageStore();
+        long[] times = { 50, 10, 40, 40, 20, 30 };
+        for (long time : times) {
+            store.save(new Message(1, "at " + time, time));
+        }
+        store.save(new Message(2, "someone else", 45));
+        store.remove(5);
+
+        List<Message> first = store.getTimelinePage(1, null, 3);
+        Assert.assertEquals(List.of(1, 4, 3), ids(first));
+        Message last = first.get(2);
+        List<Message> second = store.getTimelinePage(1,
+            new long[] { last.getTime_posted_epoch(), last.getMessage_id() }, 3);
+        Assert.assertEquals(List.of(6, 2), ids(second));
+    }
+
+    /**
+     * Edits racing the delete of the same message never leave the deleted id in the search index.
+     */
+    @Test
+    public void updateRacingRemoveLeavesNoGhosts() throws Exception {
+        InMemoryMessageStore store = new InMemoryMessageStore();
+        int count = 2000;
+        for (int i = 0; i < count; i++) {
+            store.save(new Message(1, "alpha", 1669947792L + i));
+        }
+        AtomicInteger target = new AtomicInteger(1);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<?>> editors = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            editors.add(threads.submit(() -> {
+                for (int id = target.get(); id <= count; id = target.get()) {
+                    store.updateText(id, "bravo", 0);
+                }
+            }));
+        }
+        for (int id = 1; id <= count; id++) {
+            for (int spin = 0; spin < 200; spin++) {
+                Thread.onSpinWait();
+            }
+            store.remove(id);
+            target.set(id + 1);
+        }
+        for (Future<?> editor : editors) {
+            editor.get();
+        }
+        threads.shutdown();
+
+        Assert.assertEquals(0, store.getAll().size());
+        Assert.assertArrayEquals(new int[0], store.search("bravo", 0, count).ids);
+        Assert.assertArrayEquals(new int[0], store.search("alpha", 0, count).ids);
+    }
+
+    private static List<Integer> ids(List<Message> messages) {
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : messages) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,39 @@
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IntHashSet;
+
+public class IntHashSetTest {
+
+    /**
+     * Random adds and removes, with values clustered so probe runs collide and wrap, leave the set agreeing with a
+     * HashSet at every step.
+     */
+    @Test
+    public void matchesHashSet() {
+        IntHashSet set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            int value = random.nextInt(2000) - 10;
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                Assert.assertEquals(expected.add(value), set.add(value));
+            }
+            Assert.assertEquals(expected.size(), set.size());
+        }
+        for (int value = -10; value < 1990; value++) {
+            Assert.assertEquals(expected.contains(value), set.contains(value));
+        }
+        int[] values = set.toArray();
+        Assert.assertEquals(expected.size(), values.length);
+        for (int i = 1; i < values.length; i++) {
+            Assert.assertTrue(values[i - 1] < values[i]);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.LruCache;
+import io.javalin.Javalin;
+
+public class MessageCacheConsistencyTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Reading a message, updating its text and reading it again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the second read returns the updated text rather than the cached original
+     */
+    @Test
+    public void readAfterUpdateSeesNewText() throws IOException, InterruptedException {
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), getMessage(1));
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792), getMessage(1));
+    }
+
+    /**
+     * Reading a message, deleting it and reading it again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the second read is empty rather than the cached message
+     */
+    @Test
+    public void readAfterDeleteIsEmpty() throws IOException, InterruptedException {
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), getMessage(1));
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().toString().isEmpty());
+    }
+
+    private Message getMessage(int id) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + id))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body().toString(), Message.class);
+    }
+
+    /**
+     * A cache large enough to be split into segments still never holds more than its size, keeps what was just
+     * used, and counts each lookup once.
+     */
+    @Test
+    public void stripedCacheStaysWithinCapacity() {
+        LruCache<Integer, String> cache = new LruCache<>(256, 0);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "value " + i);
+            Assert.assertEquals("value 0", cache.get(0));
+        }
+        Assert.assertTrue(cache.size() <= 256);
+        Assert.assertEquals("value 999", cache.get(999));
+        Assert.assertNull(cache.get(-1));
+        LruCache.Stats stats = cache.getStats();
+        Assert.assertEquals(1001, stats.hits);
+        Assert.assertEquals(1, stats.misses);
+        Assert.assertEquals(1000 - cache.size(), stats.evictions);
+    }
+}
@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import Controller.SocialMediaController;
+import DAO.MessageLogStore;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageLogStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path dir;
+    MessageLogStore store;
+
+    /**
+     * Before every test, open an empty log with the smallest segments and no background maintenance.
+     */
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder("log").toPath();
+        store = open();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    private MessageLogStore open() {
+        return new MessageLogStore(dir, 64 * 1024, 0.5, 0, 0);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Saves, edits and deletes survive a restart, and ids keep counting from where they were, even past a deleted
+     * newest message.
+     */
+    @Test
+    public void indexRebuiltOnRestart() {
+        for (int i = 1; i <= 5; i++) {
+            Assert.assertEquals(i, store.save(new Message(i % 2 + 1, "message " + i, 1669947792L + i))
+                    .getMessage_id());
+        }
+        Assert.assertEquals("edited", store.updateText(2, "edited", 1).getMessage_text());
+        Assert.assertEquals(0, store.updateText(3, "not yours", 1).getMessage_id());
+        Assert.assertEquals(4, store.remove(4).getMessage_id());
+        Assert.assertEquals(5, store.remove(5).getMessage_id());
+        store.close();
+
+        store = open();
+        Assert.assertEquals(3, store.getAll().size());
+        Assert.assertEquals("edited", store.getMessageById(2).getMessage_text());
+        Assert.assertEquals(0, store.getMessageById(4).getMessage_id());
+        Assert.assertEquals(2, store.getMessagesByUser(2).size());
+        Assert.assertArrayEquals(new int[] { 2 }, store.search("edited", 0, 10).ids);
+        Assert.assertEquals(6, store.save(new Message(1, "after restart", 1669947800L)).getMessage_id());
+    }
+
+    /**
+     * A record cut short by a crash is dropped at startup, along with nothing before it, and appends carry on
+     * where the last whole record ended.
+     */
+    @Test
+    public void tornRecordIsDropped() throws IOException {
+        store.save(new Message(1, "kept", 1669947792L));
+        store.save(new Message(1, "torn", 1669947793L));
+        store.close();
+
+        // the second record starts after the 16 byte header and the first record, 8 + 17 + 4 bytes long
+        try (RandomAccessFile file = new RandomAccessFile(segments().get(0).toFile(), "rw")) {
+            file.seek(16 + 29 + 8 + 17);
+            file.write(new byte[] { 'X', 'X' });
+        }
+
+        store = open();
+        Assert.assertEquals(1, store.getAll().size());
+        Assert.assertEquals("kept", store.getMessageById(1).getMessage_text());
+        Assert.assertEquals(2, store.save(new Message(1, "again", 1669947794L)).getMessage_id());
+        store.close();
+
+        store = open();
+        Assert.assertEquals("again", store.getMessageById(2).getMessage_text());
+    }
+
+    /**
+     * A last segment whose header never reached the disk is set up again as an empty one, and the segments before
+     * it are still read.
+     */
+    @Test
+    public void blankLastSegmentIsReinitialised() throws IOException {
+        String text = "x".repeat(200);
+        for (int i = 1; i <= 300; i++) {
+            store.save(new Message(1, text + i, 1669947792L + i));
+        }
+        store.close();
+        List<Path> files = segments();
+        Assert.assertEquals(2, files.size());
+
+        try (RandomAccessFile file = new RandomAccessFile(files.get(1).toFile(), "rw")) {
+            file.write(new byte[16]);
+        }
+
+        store = open();
+        Message kept = store.getMessageById(200);
+        Assert.assertEquals(text + 200, kept.getMessage_text());
+        int next = store.save(new Message(1, "after", 1669947792L)).getMessage_id();
+        Assert.assertTrue(next > 200);
+        store.close();
+
+        store = open();
+        Assert.assertEquals("after", store.getMessageById(next).getMessage_text());
+    }
+
+    /**
+     * A batch that fails part way, after rolling over to a new segment, leaves nothing behind: no ids, no index
+     * entries, no records and no new segment, in memory or after a restart.
+     */
+    @Test
+    public void failedBatchLeavesNothing() throws IOException {
+        store.save(new Message(1, "before", 1669947792L));
+        String text = "x".repeat(200);
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            batch.add(new Message(1, text + i, 1669947793L + i));
+        }
+        batch.add(new Message(1, "y".repeat(70 * 1024), 1669947792L));
+        store.saveAll(batch);
+        for (Message message : batch) {
+            Assert.assertEquals(0, message.getMessage_id());
+        }
+        Assert.assertEquals(1, store.getAll().size());
+        Assert.assertEquals(1, store.getMessagesByUser(1).size());
+        Assert.assertEquals(0, store.search("xxx", 0, 10).ids.length);
+        Assert.assertEquals(1, segments().size());
+        Assert.assertEquals(2, store.save(new Message(1, "after", 1669947792L)).getMessage_id());
+        store.close();
+
+        store = open();
+        Assert.assertEquals(2, store.getAll().size());
+        Assert.assertEquals("after", store.getMessageById(2).getMessage_text());
+    }
+
+    /**
+     * Compaction deletes segments that are mostly garbage, keeps the live messages readable, and deleted messages
+     * stay deleted after a restart.
+     */
+    @Test
+    public void compactionReclaimsSegments() throws IOException {
+        String text = "x".repeat(200);
+        for (int i = 1; i <= 1500; i++) {
+            store.save(new Message(1, text + i, 1669947792L + i));
+        }
+        int before = segments().size();
+        Assert.assertTrue(before > 3);
+        for (int i = 1; i <= 1500; i++) {
+            if (i % 10 != 0) {
+                store.remove(i);
+            }
+        }
+        store.compact();
+        Assert.assertTrue(segments().size() < before);
+        Assert.assertEquals(150, store.getAll().size());
+        Assert.assertEquals(text + 1000, store.getMessageById(1000).getMessage_text());
+        store.close();
+
+        store = open();
+        Assert.assertEquals(150, store.getAll().size());
+        Assert.assertEquals(0, store.getMessageById(999).getMessage_id());
+        Assert.assertEquals(1501, store.save(new Message(1, "next", 1669947792L)).getMessage_id());
+    }
+
+    /**
+     * With storage.engine=log the API keeps messages in the log and accounts in the database, and stopping the app
+     * closes the log so it can be opened again.
+     */
+    @Test
+    public void apiUsesLogEngine() throws IOException, InterruptedException {
+        System.setProperty("storage.engine", "log");
+        Path apiDir = folder.newFolder("api").toPath();
+        System.setProperty("storage.log.dir", apiDir.toString());
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI();
+        try {
+            app.start(8080);
+            Thread.sleep(1000);
+            HttpClient webClient = HttpClient.newHttpClient();
+            HttpResponse<String> posted = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"posted_by\":1, \"message_text\": \"logged\", \"time_posted_epoch\": 1669947792}"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, posted.statusCode());
+            Assert.assertTrue(posted.body().contains("\"message_id\":1"));
+            HttpResponse<String> all = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/accounts/1/messages")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            Assert.assertTrue(all.body().contains("logged"));
+            Assert.assertFalse(all.body().contains("test message 1"));
+        } finally {
+            app.stop();
+            System.clearProperty("storage.engine");
+            System.clearProperty("storage.log.dir");
+        }
+        MessageLogStore reopened = new MessageLogStore(apiDir, 64 * 1024, 0.5, 0, 0);
+        try {
+            Assert.assertEquals("logged", reopened.getMessageById(1).getMessage_text());
+        } finally {
+            reopened.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsEndpointTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages and then GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text with the latency, status count and DAO timing of the first request
+     */
+    @Test
+    public void metricsRecordPreviousRequest() throws IOException, InterruptedException {
+        Assert.assertEquals(200, get("/messages").statusCode());
+        Assert.assertEquals(404, get("/no-such-route").statusCode());
+
+        HttpResponse response = get("/metrics");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+
+        String body = response.body().toString();
+        Assert.assertTrue(body.contains("# TYPE http_request_duration_seconds summary"));
+        Assert.assertTrue(body.contains(
+                "http_request_duration_seconds{method=\"GET\",route=\"/messages\",quantile=\"0.99\"}"));
+        Assert.assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"/messages\",status=\"200\"}"));
+        Assert.assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"unmatched\",status=\"404\"}"));
+        Assert.assertTrue(body.contains("dao_call_duration_seconds_count{dao=\"MessageDao\",method=\"getAll\"}"));
+        Assert.assertTrue(body.contains("db_pool_connections{state=\"active\"}"));
+        Assert.assertTrue(body.contains("message_cache_hits_total"));
+        Assert.assertTrue(body.contains("db_executor_queue_wait_seconds_count "));
+        Assert.assertTrue(body.contains("db_executor_queue_depth"));
+        Assert.assertTrue(body.contains("http_requests_in_flight 1"));
+    }
+
+    private HttpResponse get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
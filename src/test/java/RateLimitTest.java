@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.RateLimiter;
+import io.javalin.Javalin;
+
+public class RateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and restart the Javalin app with small limits on login and on posting
+     * messages, so they run out within a test.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("ratelimit.login.account.rate", "0.01");
+        System.setProperty("ratelimit.login.account.burst", "2");
+        System.setProperty("ratelimit.post_messages.ip.rate", "0.01");
+        System.setProperty("ratelimit.post_messages.ip.burst", "3");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("ratelimit.login.account.rate");
+        System.clearProperty("ratelimit.login.account.burst");
+        System.clearProperty("ratelimit.post_messages.ip.rate");
+        System.clearProperty("ratelimit.post_messages.ip.burst");
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> login(String username, String password) throws IOException, InterruptedException {
+        return post("/login", "{\"username\": \"" + username + "\", \"password\": \"" + password + "\"}");
+    }
+
+    /**
+     * Successful logins are not limited per account. Failed ones are counted per username, and once the burst of
+     * failures is spent even the right password gets 429 with Retry-After, while other accounts can still log in.
+     */
+    @Test
+    public void loginLockedOutAfterFailures() throws IOException, InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(200, login("testuser1", "password").statusCode());
+        }
+        Assert.assertEquals(401, login("testuser1", "wrong").statusCode());
+        Assert.assertEquals(401, login("testuser1", "wrong").statusCode());
+        HttpResponse<String> limited = login("testuser1", "password");
+        Assert.assertEquals(429, limited.statusCode());
+        long retryAfter = Long.parseLong(limited.headers().firstValue("Retry-After").orElseThrow());
+        Assert.assertTrue(retryAfter >= 1);
+
+        Assert.assertEquals(401, login("someoneelse", "password").statusCode());
+    }
+
+    /**
+     * The per-account limit on posting is keyed on the session token's account, so naming someone else as the
+     * poster in the body does not use up their allowance.
+     */
+    @Test
+    public void postMessagesLimitedPerSessionAccount() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("ratelimit.post_messages.ip.rate", "0");
+        System.setProperty("ratelimit.post_messages.account.rate", "0.01");
+        System.setProperty("ratelimit.post_messages.account.burst", "2");
+        try {
+            socialMediaController = new SocialMediaController();
+            app = socialMediaController.startAPI();
+            app.start(8080);
+            Thread.sleep(1000);
+            String body = "{\"posted_by\":1, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}";
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(200, post("/messages", body).statusCode());
+            }
+            String token = login("testuser1", "password").headers().firstValue("X-Session-Token").orElseThrow();
+            for (int i = 0; i < 3; i++) {
+                HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages"))
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .header("Authorization", "Bearer " + token)
+                        .build(), HttpResponse.BodyHandlers.ofString());
+                Assert.assertEquals(i < 2 ? 200 : 429, response.statusCode());
+            }
+        } finally {
+            System.clearProperty("ratelimit.post_messages.account.rate");
+            System.clearProperty("ratelimit.post_messages.account.burst");
+        }
+    }
+
+    /**
+     * Posting messages is limited per IP, rejected requests never reach the database, and the decisions show up
+     * in the metrics.
+     */
+    @Test
+    public void postMessagesLimitedPerIp() throws IOException, InterruptedException {
+        String body = "{\"posted_by\":1, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}";
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(200, post("/messages", body).statusCode());
+        }
+        Assert.assertEquals(429, post("/messages", body).statusCode());
+
+        HttpResponse<String> messages = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(4, messages.body().split("message_id").length - 1);
+
+        String metrics = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics")).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        Assert.assertTrue(metrics.contains(
+                "rate_limit_decisions_total{limiter=\"post_messages.ip\",decision=\"rejected\"}"));
+        Assert.assertTrue(metrics.contains("status=\"429\""));
+    }
+
+    /**
+     * A bucket refills at its rate, and refilled buckets are swept out.
+     */
+    @Test
+    public void bucketRefillsAndIsSwept() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter("test", 20, 2, 0);
+        Assert.assertEquals(0, limiter.tryAcquire("a"));
+        Assert.assertEquals(0, limiter.tryAcquire("a"));
+        Assert.assertTrue(limiter.tryAcquire("a") > 0);
+        Assert.assertEquals(0, limiter.tryAcquire("b"));
+        Assert.assertEquals(2, limiter.size());
+
+        Thread.sleep(200);
+        Assert.assertEquals(0, limiter.tryAcquire("a"));
+        Assert.assertEquals(1, limiter.size());
+    }
+}
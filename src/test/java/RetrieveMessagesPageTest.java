@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=2 and following the next_cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: pages of at most 2 messages in message_id order, the last one without a next_cursor
+     */
+    @Test
+    public void getMessagesPagesFollowCursor() throws IOException, InterruptedException {
+        postMessage("second message");
+        postMessage("third message");
+
+        MessagePage first = getPage("limit=2");
+        Assert.assertEquals(2, first.getMessages().size());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), first.getMessages().get(0));
+        Assert.assertEquals(2, first.getMessages().get(1).getMessage_id());
+        Assert.assertNotNull(first.getNext_cursor());
+
+        MessagePage second = getPage("limit=2&after=" + first.getNext_cursor());
+        Assert.assertEquals(1, second.getMessages().size());
+        Assert.assertEquals(new Message(3, 1, "third message", 1669947792), second.getMessages().get(0));
+        Assert.assertNull(second.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a malformed cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesPageInvalidCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?after=not-a-cursor"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private MessagePage getPage(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?" + query))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body().toString(), MessagePage.class);
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
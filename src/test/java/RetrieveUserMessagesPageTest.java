@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveUserMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/accounts/1/messages?limit=2 and following the next_cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the account's messages newest first, ties on time_posted_epoch broken by message_id
+     */
+    @Test
+    public void getUserMessagesNewestFirst() throws IOException, InterruptedException {
+        postMessage("newest message", 1669947900);
+        postMessage("same time as first", 1669947792);
+        postMessage("middle message", 1669947800);
+
+        MessagePage first = getPage("/accounts/1/messages?limit=2");
+        Assert.assertEquals(2, first.getMessages().size());
+        Assert.assertEquals(new Message(2, 1, "newest message", 1669947900), first.getMessages().get(0));
+        Assert.assertEquals(new Message(4, 1, "middle message", 1669947800), first.getMessages().get(1));
+        Assert.assertNotNull(first.getNext_cursor());
+
+        MessagePage second = getPage("/accounts/1/messages?limit=2&before=" + first.getNext_cursor());
+        Assert.assertEquals(2, second.getMessages().size());
+        Assert.assertEquals(new Message(3, 1, "same time as first", 1669947792), second.getMessages().get(0));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), second.getMessages().get(1));
+        Assert.assertNull(second.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/2/messages?limit=10 for an account without messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: an empty page without a next_cursor
+     */
+    @Test
+    public void getUserMessagesPageNoMessages() throws IOException, InterruptedException {
+        MessagePage page = getPage("/accounts/2/messages?limit=10");
+        Assert.assertTrue(page.getMessages().isEmpty());
+        Assert.assertNull(page.getNext_cursor());
+    }
+
+    private MessagePage getPage(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body().toString(), MessagePage.class);
+    }
+
+    private void postMessage(String text, long time) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": " + time + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
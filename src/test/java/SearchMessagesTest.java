@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDao;
+import DAO.MessageSearchIndex;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Integer> search(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET",
+                "/messages/search?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8), null);
+        Assert.assertEquals(200, response.statusCode());
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : objectMapper.readValue(response.body(), MessagePage.class).getMessages()) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    private void post(String... texts) throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < texts.length; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"posted_by\":1, \"message_text\": \"").append(texts[i])
+                    .append("\", \"time_posted_epoch\": 1669947793}");
+        }
+        send("POST", "/messages/batch", body.append("]").toString());
+    }
+
+    /**
+     * Terms are ANDed, OR separates alternatives, matching ignores case and punctuation, and the message that
+     * uses a term most ranks first.
+     */
+    @Test
+    public void searchMatchesAndRanks() throws IOException, InterruptedException {
+        post("The quick brown fox", "A lazy dog", "quick, QUICK dog!", "brown bread");
+        Assert.assertEquals(List.of(1), search("test"));
+        Assert.assertEquals(List.of(4, 2), search("quick"));
+        Assert.assertEquals(List.of(2), search("quick fox"));
+        Assert.assertEquals(List.of(4), search("Dog QUICK"));
+        Assert.assertTrue(search("fox OR bread").containsAll(List.of(2, 5)));
+        Assert.assertEquals(2, search("fox OR bread").size());
+        Assert.assertEquals(List.of(), search("cat"));
+        Assert.assertEquals(400, send("GET", "/messages/search?q=%20", null).statusCode());
+    }
+
+    /**
+     * Updates and deletes change what a search finds straight away.
+     */
+    @Test
+    public void searchFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        post("alpha beta", "beta gamma");
+        Assert.assertEquals(2, search("beta").size());
+        send("PATCH", "/messages/2", "{\"message_text\": \"delta\"}");
+        Assert.assertEquals(List.of(3), search("beta"));
+        Assert.assertEquals(List.of(2), search("delta"));
+        send("DELETE", "/messages/3", null);
+        Assert.assertEquals(List.of(), search("beta"));
+    }
+
+    /**
+     * Results come a page at a time, and following the cursors visits every match once.
+     */
+    @Test
+    public void searchPages() throws IOException, InterruptedException {
+        post("page one", "page two", "page three", "page four", "page five");
+        List<Integer> seen = new ArrayList<>();
+        String path = "/messages/search?q=page&limit=2";
+        int pages = 0;
+        while (path != null) {
+            MessagePage page = objectMapper.readValue(send("GET", path, null).body(), MessagePage.class);
+            for (Message message : page.getMessages()) {
+                seen.add(message.getMessage_id());
+            }
+            pages++;
+            path = page.getNext_cursor() == null ? null
+                    : "/messages/search?q=page&limit=2&after=" + page.getNext_cursor();
+        }
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(5, seen.size());
+        Assert.assertTrue(seen.containsAll(List.of(2, 3, 4, 5, 6)));
+    }
+
+    /**
+     * A new DAO builds its index from the table, in parallel once the table is large enough.
+     */
+    @Test
+    public void indexIsRebuiltFromTable() throws IOException, InterruptedException {
+        String[] texts = new String[10000];
+        for (int batch = 0; batch < 3; batch++) {
+            for (int i = 0; i < texts.length; i++) {
+                texts[i] = "bulk " + (i % 2 == 0 ? "even" : "odd") + " batch" + batch;
+            }
+            post(texts);
+        }
+        MessageSearchIndex.SearchResult result = new MessageDao().search("bulk even", 0, 10);
+        Assert.assertEquals(15000, result.total);
+        Assert.assertEquals(10, result.ids.length);
+        Assert.assertEquals(10000, new MessageDao().search("batch2", 0, 1).total);
+    }
+
+    /**
+     * Terms are lower-cased the same way whatever the default locale, so a Turkish locale does not turn the I of
+     * an upper-case word into a dotless i, and a deep page is ranked as the first pages are.
+     */
+    @Test
+    public void searchIgnoresDefaultLocale() {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+            MessageSearchIndex index = new MessageSearchIndex();
+            for (int id = 1; id <= 50; id++) {
+                index.add(id, id % 2 == 0 ? "INDEX INDEX" : "INDEX");
+            }
+            MessageSearchIndex.SearchResult result = index.search("index", 20, 10);
+            Assert.assertEquals(50, result.total);
+            Assert.assertArrayEquals(new int[] { 10, 8, 6, 4, 2, 49, 47, 45, 43, 41 }, result.ids);
+            Assert.assertEquals(0, index.search("index", 50, 10).ids.length);
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
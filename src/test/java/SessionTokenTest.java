@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.SessionTokens;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and register a second account.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+        send("POST", "/register", "{\"username\": \"testuser2\", \"password\": \"password\"}", null);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body, String token)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "/login",
+                "{\"username\": \"" + username + "\", \"password\": \"password\"}", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().contains("\"username\":\"" + username + "\""));
+        return response.headers().firstValue("X-Session-Token").orElseThrow();
+    }
+
+    private static String message(int posted_by) {
+        return "{\"posted_by\":" + posted_by + ", \"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}";
+    }
+
+    /**
+     * A token lets its account post and follow as itself only, and a bad token is refused.
+     */
+    @Test
+    public void tokenActsForItsAccountOnly() throws IOException, InterruptedException {
+        String token = login("testuser1");
+
+        Assert.assertEquals(200, send("POST", "/messages", message(1), token).statusCode());
+        Assert.assertEquals(403, send("POST", "/messages", message(2), token).statusCode());
+        Assert.assertEquals(403, send("POST", "/messages/batch", "[" + message(1) + "," + message(2) + "]", token)
+                .statusCode());
+        Assert.assertEquals(200, send("POST", "/accounts/1/following/2", null, token).statusCode());
+        Assert.assertEquals(403, send("POST", "/accounts/2/following/1", null, token).statusCode());
+
+        Assert.assertEquals(401, send("POST", "/messages", message(1), token + "x").statusCode());
+        Assert.assertEquals(401, send("POST", "/messages", message(1), "not-a-token").statusCode());
+        Assert.assertEquals(200, send("POST", "/messages", message(2), null).statusCode());
+    }
+
+    /**
+     * With a token, messages of other accounts cannot be deleted or edited.
+     */
+    @Test
+    public void tokenProtectsOtherAccountsMessages() throws IOException, InterruptedException {
+        String token = login("testuser2");
+
+        Assert.assertEquals("", send("DELETE", "/messages/1", null, token).body());
+        Assert.assertEquals(400, send("PATCH", "/messages/1", "{\"message_text\": \"changed\"}", token)
+                .statusCode());
+        HttpResponse<String> original = send("GET", "/messages/1", null, null);
+        Assert.assertTrue(original.body().contains("test message 1"));
+
+        Assert.assertTrue(send("DELETE", "/messages/1", null, login("testuser1")).body().contains("test message 1"));
+    }
+
+    /**
+     * Logging out revokes the token, while other tokens for the same account stay valid.
+     */
+    @Test
+    public void logoutRevokesToken() throws IOException, InterruptedException {
+        String token = login("testuser1");
+        String other = login("testuser1");
+
+        Assert.assertEquals(200, send("POST", "/logout", null, token).statusCode());
+        Assert.assertEquals(401, send("POST", "/messages", message(1), token).statusCode());
+        Assert.assertEquals(401, send("POST", "/logout", null, token).statusCode());
+        Assert.assertEquals(401, send("POST", "/logout", null, null).statusCode());
+        Assert.assertEquals(200, send("POST", "/messages", message(1), other).statusCode());
+    }
+
+    /**
+     * Tokens expire and tokens signed with another key are refused. Once an account's revocations are full, every
+     * token it was issued until then is refused rather than any revoked one being forgotten, while other accounts
+     * keep their sessions and new logins still work. Once all revocations are full, the same happens to the
+     * account holding the most, and to no other.
+     */
+    @Test
+    public void tokensExpireAndRevocationsAreBounded() {
+        SessionTokens tokens = new SessionTokens(new byte[32], 3600, 4, 2);
+        String token = tokens.issue(1);
+        Assert.assertEquals(1, tokens.verify(token));
+        Assert.assertEquals(-1, new SessionTokens(new byte[] { 1 }, 3600, 4, 2).verify(token));
+        Assert.assertEquals(-1, new SessionTokens(new byte[32], 0, 4, 2).verify(
+                new SessionTokens(new byte[32], 0, 4, 2).issue(1)));
+
+        String bystander = tokens.issue(9);
+        String[] revoked = { tokens.issue(1), tokens.issue(1), tokens.issue(1) };
+        for (String each : revoked) {
+            Assert.assertTrue(tokens.revoke(each));
+        }
+        for (String each : revoked) {
+            Assert.assertEquals(-1, tokens.verify(each));
+        }
+        Assert.assertEquals(-1, tokens.verify(token));
+        Assert.assertEquals(9, tokens.verify(bystander));
+        String fresh = tokens.issue(1);
+        Assert.assertEquals(1, tokens.verify(fresh));
+        Assert.assertTrue(tokens.revoke(fresh));
+        Assert.assertEquals(-1, tokens.verify(fresh));
+
+        String heaviest = tokens.issue(2);
+        String other = tokens.issue(3);
+        Assert.assertTrue(tokens.revoke(tokens.issue(2)));
+        Assert.assertTrue(tokens.revoke(tokens.issue(2)));
+        Assert.assertTrue(tokens.revoke(tokens.issue(3)));
+        String last = tokens.issue(4);
+        Assert.assertTrue(tokens.revoke(last));
+        Assert.assertEquals(-1, tokens.verify(last));
+        Assert.assertEquals(-1, tokens.verify(heaviest));
+        Assert.assertEquals(3, tokens.verify(other));
+        Assert.assertEquals(9, tokens.verify(bystander));
+        Assert.assertEquals(2, tokens.verify(tokens.issue(2)));
+    }
+}
@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SingleRoundTripMutationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * @return how many calls to MessageDao have completed, across all of its methods
+     */
+    private long messageDaoCalls() throws IOException, InterruptedException {
+        String body = send("GET", "/metrics", null).body();
+        Matcher matcher = Pattern.compile(
+                "dao_call_duration_seconds_count\\{dao=\"MessageDao\",method=\"\\w+\"\\} (\\d+)").matcher(body);
+        long calls = 0;
+        while (matcher.find()) {
+            calls += Long.parseLong(matcher.group(1));
+        }
+        return calls;
+    }
+
+    /**
+     * Updating a message that is not cached returns the updated row from a single DAO call.
+     */
+    @Test
+    public void patchTakesOneDatabaseCall() throws IOException, InterruptedException {
+        long before = messageDaoCalls();
+        HttpResponse<String> response = send("PATCH", "/messages/1", "{\"message_text\": \"updated\"}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(1, 1, "updated", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+        Assert.assertEquals(before + 1, messageDaoCalls());
+
+        HttpResponse<String> missing = send("PATCH", "/messages/99", "{\"message_text\": \"updated\"}");
+        Assert.assertEquals(400, missing.statusCode());
+        Assert.assertEquals(before + 2, messageDaoCalls());
+    }
+
+    /**
+     * Deleting a message returns the deleted row from a single DAO call, and it is gone afterwards.
+     */
+    @Test
+    public void deleteTakesOneDatabaseCall() throws IOException, InterruptedException {
+        long before = messageDaoCalls();
+        HttpResponse<String> response = send("DELETE", "/messages/1", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+        Assert.assertEquals(before + 1, messageDaoCalls());
+
+        HttpResponse<String> again = send("DELETE", "/messages/1", null);
+        Assert.assertEquals(200, again.statusCode());
+        Assert.assertEquals("", again.body());
+        Assert.assertEquals(before + 2, messageDaoCalls());
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDao;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class StreamMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same JSON list of message objects as the non-streamed endpoint
+     */
+    @Test
+    public void streamAllMessages() throws IOException, InterruptedException {
+        HttpResponse response = get("/messages?stream=true");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("application/json"));
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        List<Message> actualResult = objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/2/messages?stream=true for an account without messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: an empty JSON list
+     */
+    @Test
+    public void streamUserMessagesNoMessages() throws IOException, InterruptedException {
+        HttpResponse response = get("/accounts/2/messages?stream=true");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("[]", response.body().toString());
+    }
+
+    /**
+     * A query that fails after the first rows have gone out does not end as a well formed list: the DAO throws and
+     * the streamed response is cut off rather than closed.
+     */
+    @Test
+    public void failedQueryIsNotTakenAsComplete() throws Exception {
+        MessageDao messageDao = new MessageDao();
+        String text = "x".repeat(200);
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 30000; i++) {
+            batch.add(new Message(1, text + i, 1669947792L + i));
+        }
+        messageDao.saveAll(batch);
+
+        int[] seen = { 0 };
+        try {
+            messageDao.forEach(message -> {
+                if (++seen[0] == 1) {
+                    abortStreamingSession();
+                }
+            });
+            Assert.fail("the stream ended normally after " + seen[0] + " messages");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(seen[0] < 30001);
+        }
+
+        HttpResponse<InputStream> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=true")).build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        Assert.assertEquals(200, response.statusCode());
+        try (InputStream body = response.body()) {
+            body.readNBytes(1024);
+            abortStreamingSession();
+            body.readAllBytes();
+            Assert.fail("a stream cut off by a failed query ended normally");
+        } catch (IOException e) {
+            // the server aborted the connection
+        }
+    }
+
+    /**
+     * Ends the other database session that was used last, which is the one a lazy query is streaming from while
+     * its consumer runs.
+     */
+    private static void abortStreamingSession() {
+        try (Connection conn = ConnectionUtil.borrowConnection(); Statement statement = conn.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT SESSION_ID FROM INFORMATION_SCHEMA.SESSIONS "
+                    + "WHERE SESSION_ID <> SESSION_ID() ORDER BY SLEEP_SINCE DESC LIMIT 1");
+            Assert.assertTrue(rs.next());
+            statement.execute("CALL ABORT_SESSION(" + rs.getInt(1) + ")");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpResponse get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+import io.javalin.util.LoomUtil;
+
+public class VirtualThreadModeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and start the Javalin app with virtual threads requested, plus a probe
+     * route that reports the thread it runs on.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("server.virtualThreads", "true");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.get("thread", ctx -> ctx.result(Thread.currentThread().toString()));
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("server.virtualThreads");
+    }
+
+    /**
+     * With server.virtualThreads set, handlers run on virtual threads where the JDK has them and still serve
+     * requests on platform threads where it does not.
+     */
+    @Test
+    public void handlersRunOnVirtualThreads() throws IOException, InterruptedException {
+        HttpResponse<String> messages = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages")).build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, messages.statusCode());
+
+        Assume.assumeTrue(LoomUtil.INSTANCE.getLoomAvailable());
+        HttpResponse<String> thread = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/thread")).build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertTrue(thread.body(), thread.body().startsWith("VirtualThread"));
+    }
+}